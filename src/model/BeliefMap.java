@@ -0,0 +1,276 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Remembers what the agent last saw of the nodes that are now hidden by the fog of war ({@link Owner#UNKNOWN}), and estimates their
+ * current state.
+ * <p>
+ * When a node goes dark (see {@link TurnDiff.Change#HIDDEN}), its owner and fernie count in the previous round and the round in which
+ * it was seen are kept; when it becomes visible again ({@link TurnDiff.Change#REVEALED}), this belief is dropped, since the ring
+ * shows the node again. So a round only touches the nodes whose visibility changed. The beliefs are stored in primitive arrays, and
+ * the hidden nodes with a belief are kept in a list, so the queries don't scan the ring.
+ * <p>
+ * An opponent node behind the fog is estimated to grow every round by the fernies that the opponent placed on a visible node of its
+ * own in the last rounds (on average), but not faster than the income of a player spread over the opponent's nodes, and not beyond
+ * the maximum of fernies per node. A node of mine that went dark was taken by the opponent, since the agent always sees its own
+ * nodes.
+ */
+public final class BeliefMap {
+    /** Number of rounds over which the reinforcements by the opponent are averaged. */
+    public static final int WINDOW_SIZE = 10;
+    private static final byte UNKNOWN = (byte) Owner.UNKNOWN.ordinal();
+    private static final Owner[] OWNERS = Owner.values();
+
+    private byte[] owners = new byte[0]; // last seen owner, UNKNOWN for nodes without a belief
+    private int[] fernies = new int[0];
+    private int[] rounds = new int[0];
+    private int[] positions = new int[0]; // position in the list of hidden nodes, -1 for nodes without a belief
+    private int[] hidden = new int[16];
+    private int hiddenCount;
+    private final int[] counts = new int[OWNERS.length];
+    private final RollingWindow reinforcements = new RollingWindow(WINDOW_SIZE); // fernies added to visible opponent nodes
+    private final RollingWindow opponentNodes = new RollingWindow(WINDOW_SIZE); // visible opponent nodes
+
+    /**
+     * Returns the number of nodes of the ring that the beliefs belong to.
+     *
+     * @return number of nodes
+     */
+    public int getNodeCount() {
+        return owners.length;
+    }
+
+    /**
+     * Removes all beliefs and sets the number of nodes. Is called when the ring has a different size than before, e.g. in a new game.
+     * The reinforcements of the last rounds are kept.
+     *
+     * @param nodeCount the number of nodes
+     */
+    public void reset(int nodeCount) {
+        owners = new byte[nodeCount];
+        Arrays.fill(owners, UNKNOWN);
+        fernies = new int[nodeCount];
+        rounds = new int[nodeCount];
+        positions = new int[nodeCount];
+        Arrays.fill(positions, -1);
+        hiddenCount = 0;
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Updates the beliefs with the nodes whose visibility changed between the previous and the current round, and records how much the
+     * opponent reinforced its visible nodes.
+     *
+     * @param turn     the changes of the nodes between the previous and the current round
+     * @param previous the ring as the agent left it in the previous round
+     * @param current  the ring in the current round
+     * @param round    the current round
+     */
+    public void recordTurn(TurnDiff turn, RingState previous, RingState current, int round) {
+        if (turn.getNodeCount() != owners.length) {
+            reset(turn.getNodeCount());
+        }
+        int reinforced = 0;
+        for (int event = 0; event < turn.size(); event++) {
+            int nodeNumber = turn.getNodeNumber(event);
+            switch (turn.getChange(event)) {
+            case HIDDEN:
+                Owner owner = previous.getOwner(nodeNumber);
+                if (owner == Owner.MINE) {
+                    setBelief(nodeNumber, Owner.THEIRS, 1, round);
+                } else {
+                    setBelief(nodeNumber, owner, previous.getFernieCount(nodeNumber), round - 1);
+                }
+                break;
+            case REVEALED:
+                remove(nodeNumber);
+                break;
+            case REINFORCED:
+                reinforced += turn.getFernieDelta(event);
+                break;
+            default:
+                break;
+            }
+        }
+        reinforcements.add(reinforced);
+        opponentNodes.add(current.getNodeCount(Owner.THEIRS));
+    }
+
+    /**
+     * Sets the belief about a hidden node, e.g. when the beliefs are restored from the notes file. A belief with the owner
+     * {@link Owner#UNKNOWN} removes the belief.
+     *
+     * @param nodeNumber  the node number
+     * @param owner       the owner when the node was seen
+     * @param fernieCount the fernie count when the node was seen
+     * @param round       the round in which the node was seen
+     */
+    public void setBelief(int nodeNumber, Owner owner, int fernieCount, int round) {
+        if (owner == Owner.UNKNOWN) {
+            remove(nodeNumber);
+            return;
+        }
+        if (positions[nodeNumber] == -1) {
+            if (hiddenCount == hidden.length) {
+                hidden = Arrays.copyOf(hidden, hiddenCount * 2);
+            }
+            positions[nodeNumber] = hiddenCount;
+            hidden[hiddenCount++] = nodeNumber;
+        } else {
+            counts[owners[nodeNumber]]--;
+        }
+        owners[nodeNumber] = (byte) owner.ordinal();
+        counts[owner.ordinal()]++;
+        fernies[nodeNumber] = fernieCount;
+        rounds[nodeNumber] = round;
+    }
+
+    // Drops the belief about a node; the last node of the list takes its place.
+    private void remove(int nodeNumber) {
+        int position = positions[nodeNumber];
+        if (position == -1) {
+            return;
+        }
+        int last = hidden[--hiddenCount];
+        hidden[position] = last;
+        positions[last] = position;
+        positions[nodeNumber] = -1;
+        counts[owners[nodeNumber]]--;
+        owners[nodeNumber] = UNKNOWN;
+    }
+
+    /**
+     * Returns the owner of a hidden node when the agent saw it last.
+     *
+     * @param nodeNumber the node number
+     * @return the owner, {@link Owner#UNKNOWN} if there is no belief about the node
+     */
+    public Owner getOwner(int nodeNumber) {
+        return nodeNumber < owners.length ? OWNERS[owners[nodeNumber]] : Owner.UNKNOWN;
+    }
+
+    /**
+     * Returns the fernie count of a hidden node when the agent saw it last.
+     *
+     * @param nodeNumber the node number
+     * @return the fernie count, 0 if there is no belief about the node
+     */
+    public int getFernieCount(int nodeNumber) {
+        return getOwner(nodeNumber) == Owner.UNKNOWN ? 0 : fernies[nodeNumber];
+    }
+
+    /**
+     * Returns the round in which the agent saw a hidden node last.
+     *
+     * @param nodeNumber the node number
+     * @return the round, 0 if there is no belief about the node
+     */
+    public int getRoundSeen(int nodeNumber) {
+        return getOwner(nodeNumber) == Owner.UNKNOWN ? 0 : rounds[nodeNumber];
+    }
+
+    /**
+     * Returns the hidden nodes that the agent has a belief about, in ascending order.
+     *
+     * @return node numbers
+     */
+    public int[] getHiddenNodes() {
+        int[] result = Arrays.copyOf(hidden, hiddenCount);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the number of hidden nodes that belonged to a given owner when the agent saw them last.
+     *
+     * @param owner the owner
+     * @return number of nodes
+     */
+    public int getHiddenNodeCount(Owner owner) {
+        return counts[owner.ordinal()];
+    }
+
+    /**
+     * Returns the fernies that the opponent placed on its visible nodes in the last rounds.
+     *
+     * @return fernies per round
+     */
+    public RollingWindow getReinforcements() {
+        return reinforcements;
+    }
+
+    /**
+     * Returns the number of visible opponent nodes in the last rounds.
+     *
+     * @return nodes per round
+     */
+    public RollingWindow getOpponentNodes() {
+        return opponentNodes;
+    }
+
+    /**
+     * Returns the number of fernies by which an opponent node behind the fog is estimated to grow per round: the fernies that the
+     * opponent placed on a visible node in the last rounds, but not more than the income of the agent (the available fernies of the
+     * round) spread over the opponent's visible and hidden nodes.
+     *
+     * @param ring the ring in the current round
+     * @return fernies per node and round
+     */
+    public double getGrowthRate(RingState ring) {
+        int nodes = ring.getNodeCount(Owner.THEIRS) + counts[Owner.THEIRS.ordinal()];
+        double income = (double) ring.getAvailableFernies() / Math.max(nodes, 1);
+        if (opponentNodes.getSum() == 0) {
+            return income;
+        }
+        return Math.min((double) reinforcements.getSum() / opponentNodes.getSum(), income);
+    }
+
+    /**
+     * Returns the estimated fernie count of a hidden node in the current round.
+     *
+     * @param nodeNumber the node number
+     * @param ring       the ring in the current round
+     * @param round      the current round
+     * @return the estimated fernie count, 0 if there is no belief about the node or the node is visible
+     */
+    public int estimateFernieCount(int nodeNumber, RingState ring, int round) {
+        return estimate(nodeNumber, ring, round, getGrowthRate(ring));
+    }
+
+    private int estimate(int nodeNumber, RingState ring, int round, double growthRate) {
+        Owner owner = getOwner(nodeNumber);
+        if (owner == Owner.UNKNOWN || nodeNumber >= ring.getNodeCount() || ring.getOwner(nodeNumber) != Owner.UNKNOWN) {
+            return 0;
+        }
+        if (owner != Owner.THEIRS) {
+            return fernies[nodeNumber];
+        }
+        double grown = fernies[nodeNumber] + growthRate * Math.max(round - rounds[nodeNumber], 0);
+        return (int) Math.min(grown, ring.getMaxFerniesPerNode());
+    }
+
+    /**
+     * Returns the estimated sum of fernies on the hidden nodes that belonged to a given owner when the agent saw them last, e.g. the
+     * strength of the opponent behind the fog.
+     *
+     * @param owner the owner
+     * @param ring  the ring in the current round
+     * @param round the current round
+     * @return estimated fernies
+     */
+    public long getEstimatedFernies(Owner owner, RingState ring, int round) {
+        if (counts[owner.ordinal()] == 0) {
+            return 0;
+        }
+        double growthRate = getGrowthRate(ring);
+        long sum = 0;
+        for (int i = 0; i < hiddenCount; i++) {
+            int nodeNumber = hidden[i];
+            if (owners[nodeNumber] == owner.ordinal()) {
+                sum += estimate(nodeNumber, ring, round, growthRate);
+            }
+        }
+        return sum;
+    }
+}
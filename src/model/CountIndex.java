@@ -0,0 +1,110 @@
+package model;
+
+import java.util.*;
+
+/**
+ * Keeps the nodes of a {@link Ring} grouped by owner and fernie count, so that the node with the lowest or highest fernie count of an
+ * owner can be found without scanning the ring.
+ * <p>
+ * For every owner the index holds a sorted map from fernie count to the bucket of nodes with exactly that count. A bucket is an array
+ * of node numbers in which a node can be removed in O(1) (the last node takes its place), so a change of a node costs O(log k), k being
+ * the number of different fernie counts of the owner. Since all tied nodes are in one bucket, a uniformly random node among them is
+ * picked in O(1).
+ */
+final class CountIndex {
+    private final List<TreeMap<Integer, Bucket>> buckets = new ArrayList<>();
+    private final int[] position; // position of every node within its bucket
+
+    /**
+     * Builds the index for the nodes of a given store.
+     *
+     * @param store the node store
+     */
+    CountIndex(NodeStore store) {
+        for (int i = 0; i < Owner.values().length; i++) {
+            buckets.add(new TreeMap<>());
+        }
+        this.position = new int[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            add(i, store.getOwner(i), store.getFernieCount(i));
+        }
+    }
+
+    /**
+     * Updates the index after a node has changed.
+     *
+     * @param nodeNumber the node number
+     * @param oldOwner   the owner before the change
+     * @param oldCount   the fernie count before the change
+     * @param newOwner   the owner after the change
+     * @param newCount   the fernie count after the change
+     */
+    void update(int nodeNumber, Owner oldOwner, int oldCount, Owner newOwner, int newCount) {
+        if (oldOwner == newOwner && oldCount == newCount) {
+            return;
+        }
+        remove(nodeNumber, oldOwner, oldCount);
+        add(nodeNumber, newOwner, newCount);
+    }
+
+    private void add(int nodeNumber, Owner owner, int count) {
+        buckets.get(owner.ordinal()).computeIfAbsent(count, c -> new Bucket()).add(nodeNumber);
+    }
+
+    private void remove(int nodeNumber, Owner owner, int count) {
+        TreeMap<Integer, Bucket> map = buckets.get(owner.ordinal());
+        Bucket bucket = map.get(count);
+        bucket.remove(nodeNumber);
+        if (bucket.size == 0) {
+            map.remove(count);
+        }
+    }
+
+    /**
+     * Returns a random node among the nodes of an owner with the lowest fernie count.
+     *
+     * @param owner  the owner
+     * @param random the random number generator used to break ties
+     * @return the node number, or -1 if the owner has no nodes
+     */
+    int min(Owner owner, SplittableRandom random) {
+        Map.Entry<Integer, Bucket> entry = buckets.get(owner.ordinal()).firstEntry();
+        return entry == null ? -1 : entry.getValue().pick(random);
+    }
+
+    /**
+     * Returns a random node among the nodes of an owner with the highest fernie count.
+     *
+     * @param owner  the owner
+     * @param random the random number generator used to break ties
+     * @return the node number, or -1 if the owner has no nodes
+     */
+    int max(Owner owner, SplittableRandom random) {
+        Map.Entry<Integer, Bucket> entry = buckets.get(owner.ordinal()).lastEntry();
+        return entry == null ? -1 : entry.getValue().pick(random);
+    }
+
+    // Unordered set of node numbers with the same owner and fernie count.
+    private class Bucket {
+        private int[] nodes = new int[4];
+        private int size;
+
+        private void add(int nodeNumber) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            position[nodeNumber] = size;
+            nodes[size++] = nodeNumber;
+        }
+
+        private void remove(int nodeNumber) {
+            int last = nodes[--size];
+            nodes[position[nodeNumber]] = last;
+            position[last] = position[nodeNumber];
+        }
+
+        private int pick(SplittableRandom random) {
+            return size == 1 ? nodes[0] : nodes[random.nextInt(size)];
+        }
+    }
+}
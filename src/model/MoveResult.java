@@ -0,0 +1,69 @@
+package model;
+
+/**
+ * Result codes of the moves on a {@link Ring} that don't throw exceptions ({@link Ring#tryAttack(int, int)},
+ * {@link Ring#tryAddFernies(int, int)}, {@link Ring#tryRemoveFernies(int, int)} and {@link Ring#applyMoves(int[], int[])}).
+ * <p>
+ * A result >= 0 is the number of fernies that have actually been placed or removed, which may be less than requested if the maximum
+ * number of fernies per node was reached. A negative result is one of the codes below, in which case the ring hasn't been changed.
+ */
+public final class MoveResult {
+    /** The node does not exist. */
+    public static final int INVALID_NODE = -1;
+    /** The number of fernies is negative. */
+    public static final int INVALID_AMOUNT = -2;
+    /** An attack on a node that doesn't belong to the opponent. */
+    public static final int NOT_OPPONENT = -3;
+    /** Fernies are placed on an opponent node instead of attacking it. */
+    public static final int OPPONENT_NODE = -4;
+    /** Fernies are removed from a node that isn't owned by the agent. */
+    public static final int NOT_MINE = -5;
+    /** An attack with fewer fernies than the opponent has on the node. */
+    public static final int TOO_FEW = -6;
+    /** Fernies are placed on an invisible node. */
+    public static final int INVISIBLE = -7;
+    /** More fernies are removed than are placed on the node. */
+    public static final int TOO_MANY_REMOVED = -8;
+
+    private MoveResult() {
+    }
+
+    /**
+     * Returns whether a result stands for a move that has been carried out.
+     * @param result the result
+     * @return {@code true} if the move has been carried out, {@code false} if the result is an error code
+     */
+    public static boolean isValid(int result) {
+        return result >= 0;
+    }
+
+    /**
+     * Returns the message describing an error code.
+     * @param result the error code
+     * @param nodeNumber the node number of the move
+     * @return the message
+     */
+    public static String getMessage(int result, int nodeNumber) {
+        switch (result) {
+        case INVALID_NODE:
+            return "Node does not exist.";
+        case INVALID_AMOUNT:
+            return "Invalid move: The number of fernies must not be negative. Node number: " + nodeNumber;
+        case NOT_OPPONENT:
+            return "You are trying to attack a node that does not belong to the opponent. Use the addFernie method instead.";
+        case OPPONENT_NODE:
+            return "You are trying to place fernies on an opponent node. Use the attack method instead.";
+        case NOT_MINE:
+            return "Invalid move: You are trying to remove fernies from a node that isn't yours. Node number: " + nodeNumber;
+        case TOO_FEW:
+            return "Bad move: You're trying to attack the opponent but are using too few fernies. Node number: " + nodeNumber;
+        case INVISIBLE:
+            return "Invalid move: You're trying to add fernies to an invisible node.";
+        case TOO_MANY_REMOVED:
+            return "Invalid move: You are trying to remove more fernies from the node than are currently placed on it. Node number: "
+                    + nodeNumber;
+        default:
+            return "The move was carried out with " + result + " fernies.";
+        }
+    }
+}
@@ -2,11 +2,16 @@ package model;
 
 /**
  * Represents a node on the ring. The Node object includes the node number, its owner and the fernies currently placed on it.
+ * <p>
+ * If the ring stores its nodes in primitive arrays or off-heap ({@link StorageLayout#ARRAYS}, {@link StorageLayout#OFF_HEAP}), a Node is
+ * only a view on the ring: it has no state of its own, and all reads and changes go through the ring.
  */
 public class Node {
     private final int nodeNumber;
     private Owner owner;
     private int fernieCount;
+    private Ring ring; // the ring the node belongs to, null as long as the node hasn't been added to a ring
+    private final boolean view; // true if the owner and fernie count are stored in the ring instead of this object
 
     /**
      * Creates a new node. After initializing, the node has a final node number, an
@@ -19,6 +24,7 @@ public class Node {
     public Node(int nodeNumber, String owner, int fernieCount) {
         this.nodeNumber = nodeNumber;
         this.fernieCount = fernieCount;
+        this.view = false;
         switch (owner) {
         case "Y":
             this.owner = Owner.MINE;
@@ -34,6 +40,32 @@ public class Node {
         }
     }
 
+    /**
+     * Creates a new node with an owner that has already been decoded.
+     * 
+     * @param nodeNumber  the node number
+     * @param owner       the owner of the node
+     * @param fernieCount the number of fernies on the node
+     */
+    public Node(int nodeNumber, Owner owner, int fernieCount) {
+        this.nodeNumber = nodeNumber;
+        this.owner = owner;
+        this.fernieCount = fernieCount;
+        this.view = false;
+    }
+
+    /**
+     * Creates a view on a node of a ring whose nodes are stored in primitive arrays or off-heap.
+     * 
+     * @param ring       the ring
+     * @param nodeNumber the node number
+     */
+    Node(Ring ring, int nodeNumber) {
+        this.nodeNumber = nodeNumber;
+        this.ring = ring;
+        this.view = true;
+    }
+
     /**
      * Returns the node number.
      * 
@@ -49,7 +81,7 @@ public class Node {
      * @return node owner
      */
     public Owner getOwner() {
-        return owner;
+        return view ? ring.getOwner(nodeNumber) : owner;
     }
     
     //There is no setter for the owner attribute, because it should only be changed through the add or remove fernie methods.
@@ -60,7 +92,7 @@ public class Node {
      * @return number of fernies on the node
      */
     public int getFernieCount() {
-        return fernieCount;
+        return view ? ring.getFernieCount(nodeNumber) : fernieCount;
     }
 
     /**
@@ -79,15 +111,15 @@ public class Node {
      * @throws MoveException thrown if the move is invalid or discouraged
      */
     public void addFernies(int fernies) throws MoveException {
+        Owner owner = getOwner();
+        int fernieCount = getFernieCount();
         if (owner == Owner.MINE) {
-            this.fernieCount += fernies;
+            setState(owner, fernieCount + fernies);
         } else if (owner == Owner.UNCONTROLLED && fernies > 0) {
-            this.owner = Owner.MINE; //By placing fernies on an uncontrolled node, the node becomes mine.
-            this.fernieCount += fernies;
+            setState(Owner.MINE, fernieCount + fernies); //By placing fernies on an uncontrolled node, the node becomes mine.
         } else if (owner == Owner.THEIRS) {
-            if (this.fernieCount < fernies) {
-                int temp = fernieCount;
-                this.fernieCount = fernies - temp;
+            if (fernieCount < fernies) {
+                setState(owner, fernies - fernieCount);
             } else {
                 throw new MoveException(
                         "Bad move: You're trying to attack the opponent but are using too few fernies. Node number: "
@@ -111,11 +143,12 @@ public class Node {
      * @throws MoveException thrown if the move is invalid
      */
     public void removeFernies(int ferniesRemove) throws MoveException {
-        if (owner == Owner.MINE && this.fernieCount - ferniesRemove >= 0) {
-            this.fernieCount -= ferniesRemove;
-            if (fernieCount == 0) {
-                owner = Owner.UNCONTROLLED; //If I remove all fernies from the node, the node becomes uncontrolled.
-            }
+        Owner owner = getOwner();
+        int fernieCount = getFernieCount();
+        if (owner == Owner.MINE && fernieCount - ferniesRemove >= 0) {
+            fernieCount -= ferniesRemove;
+            //If I remove all fernies from the node, the node becomes uncontrolled.
+            setState(fernieCount == 0 ? Owner.UNCONTROLLED : owner, fernieCount);
         } else if (owner == Owner.MINE && fernieCount - ferniesRemove < 0) {
             throw new MoveException(
                     "Invalid move: You are trying to remove more fernies from the node than are currently placed on it. Node number: "
@@ -127,13 +160,45 @@ public class Node {
         }
     }
 
+    /*
+     * Changes the state of the node. If the node belongs to a ring, the change is routed through the ring, which stores it (view) or
+     * calls assign (object).
+     */
+    private void setState(Owner owner, int fernieCount) {
+        if (ring != null) {
+            ring.set(nodeNumber, owner, fernieCount);
+        } else {
+            assign(owner, fernieCount);
+        }
+    }
+
+    /**
+     * Sets the owner and fernie count of the node object without any further checks. Is only used by the ring's storage.
+     * 
+     * @param owner       the new owner
+     * @param fernieCount the new fernie count
+     */
+    void assign(Owner owner, int fernieCount) {
+        this.owner = owner;
+        this.fernieCount = fernieCount;
+    }
+
+    /**
+     * Adds the node to a given ring.
+     * 
+     * @param ring the ring
+     */
+    void attach(Ring ring) {
+        this.ring = ring;
+    }
+
     /**
      * Returns whether the node is visible.
      * 
      * @return {@code true} if the node is visible, {@code false} otherwise
      */
     public boolean isVisible() {
-        return (owner != Owner.UNKNOWN);
+        return (getOwner() != Owner.UNKNOWN);
     }
 
 }
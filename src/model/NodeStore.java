@@ -0,0 +1,286 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stores the owners and fernie counts of the nodes of a {@link Ring}. The ring accesses its nodes only through this class, so the
+ * storage layout can be chosen independently of the ring logic (see {@link StorageLayout}).
+ */
+abstract class NodeStore {
+
+    /**
+     * Returns the number of nodes.
+     * 
+     * @return number of nodes
+     */
+    abstract int size();
+
+    /**
+     * Returns the owner of a node.
+     * 
+     * @param nodeNumber the node number
+     * @return the owner
+     */
+    abstract Owner getOwner(int nodeNumber);
+
+    /**
+     * Returns the fernie count of a node.
+     * 
+     * @param nodeNumber the node number
+     * @return the fernie count
+     */
+    abstract int getFernieCount(int nodeNumber);
+
+    /**
+     * Changes the owner and fernie count of a node.
+     * 
+     * @param nodeNumber  the node number
+     * @param owner       the new owner
+     * @param fernieCount the new fernie count
+     */
+    abstract void set(int nodeNumber, Owner owner, int fernieCount);
+
+    /**
+     * Returns the {@link Node} object of a node.
+     * 
+     * @param nodeNumber the node number
+     * @return the node
+     */
+    abstract Node getNode(int nodeNumber);
+
+    /**
+     * Stores every node as a {@link Node} object. This is the original layout of the ring.
+     */
+    static class OfObjects extends NodeStore {
+        private final Node[] nodes;
+
+        /**
+         * Creates the store from a node array that is sorted by node number.
+         * 
+         * @param nodes the nodes
+         */
+        OfObjects(Node[] nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        int size() {
+            return nodes.length;
+        }
+
+        @Override
+        Owner getOwner(int nodeNumber) {
+            return nodes[nodeNumber].getOwner();
+        }
+
+        @Override
+        int getFernieCount(int nodeNumber) {
+            return nodes[nodeNumber].getFernieCount();
+        }
+
+        @Override
+        void set(int nodeNumber, Owner owner, int fernieCount) {
+            nodes[nodeNumber].assign(owner, fernieCount);
+        }
+
+        @Override
+        Node getNode(int nodeNumber) {
+            return nodes[nodeNumber];
+        }
+
+        /**
+         * Returns the node array.
+         * 
+         * @return the nodes
+         */
+        Node[] getNodes() {
+            return nodes;
+        }
+    }
+
+    /**
+     * Stores the owners in a byte array (ordinal of the {@link Owner}) and the fernie counts in an int array. {@link Node} objects
+     * are only created as views when a caller asks for them.
+     */
+    static class OfArrays extends NodeStore {
+        private final Ring ring;
+        private final byte[] owners;
+        private final int[] fernies;
+
+        /**
+         * Creates the store from the primitive arrays. The arrays are used directly and are not copied.
+         * 
+         * @param ring    the ring the store belongs to (needed for the node views)
+         * @param owners  the owners, encoded by their ordinal
+         * @param fernies the fernie counts
+         */
+        OfArrays(Ring ring, byte[] owners, int[] fernies) {
+            this.ring = ring;
+            this.owners = owners;
+            this.fernies = fernies;
+        }
+
+        @Override
+        int size() {
+            return owners.length;
+        }
+
+        @Override
+        Owner getOwner(int nodeNumber) {
+            return Owner.of(owners[nodeNumber]);
+        }
+
+        @Override
+        int getFernieCount(int nodeNumber) {
+            return fernies[nodeNumber];
+        }
+
+        @Override
+        void set(int nodeNumber, Owner owner, int fernieCount) {
+            owners[nodeNumber] = (byte) owner.ordinal();
+            fernies[nodeNumber] = fernieCount;
+        }
+
+        @Override
+        Node getNode(int nodeNumber) {
+            return new Node(ring, nodeNumber);
+        }
+
+        /**
+         * Returns the array of owners (not a copy), so that the indexes can be built in bulk.
+         * 
+         * @return owners, encoded by their ordinal
+         */
+        byte[] getOwners() {
+            return owners;
+        }
+
+        /**
+         * Returns the array of fernie counts (not a copy), so that the indexes can be built in bulk.
+         * 
+         * @return fernie counts
+         */
+        int[] getFernies() {
+            return fernies;
+        }
+    }
+
+    /**
+     * Stores the owners (1 byte per node) and the fernie counts (4 bytes per node) outside of the Java heap, either in direct buffers
+     * or in buffers mapped from a file. Like {@link OfArrays}, {@link Node} objects are only created as views.
+     * <p>
+     * A buffer can't hold more than Integer.MAX_VALUE bytes, so the nodes are split into pages of 2^26 nodes, each with its own
+     * buffer for the owners and the fernie counts.
+     */
+    static class OffHeap extends NodeStore {
+        private static final int PAGE_BITS = 26;
+        private static final int PAGE_SIZE = 1 << PAGE_BITS;
+        private static final int PAGE_MASK = PAGE_SIZE - 1;
+        private final Ring ring;
+        private final int size;
+        private final ByteBuffer[] owners;
+        private final IntBuffer[] fernies;
+
+        private OffHeap(Ring ring, int size, ByteBuffer[] owners, IntBuffer[] fernies) {
+            this.ring = ring;
+            this.size = size;
+            this.owners = owners;
+            this.fernies = fernies;
+        }
+
+        /**
+         * Creates the store in direct buffers and copies the owners and fernie counts into them. The direct buffers count against the
+         * limit set by {@code -XX:MaxDirectMemorySize}, which is the maximum heap size by default.
+         * 
+         * @param ring    the ring the store belongs to (needed for the node views)
+         * @param owners  the owners, encoded by their ordinal
+         * @param fernies the fernie counts
+         * @return the store
+         */
+        static OffHeap allocate(Ring ring, byte[] owners, int[] fernies) {
+            int pages = pages(owners.length);
+            ByteBuffer[] ownerPages = new ByteBuffer[pages];
+            IntBuffer[] ferniePages = new IntBuffer[pages];
+            for (int p = 0; p < pages; p++) {
+                int from = p << PAGE_BITS;
+                int length = Math.min(owners.length - from, PAGE_SIZE);
+                ownerPages[p] = ByteBuffer.allocateDirect(length).put(0, owners, from, length);
+                ferniePages[p] = ByteBuffer.allocateDirect(4 * length).order(ByteOrder.nativeOrder()).asIntBuffer()
+                        .put(0, fernies, from, length);
+            }
+            return new OffHeap(ring, owners.length, ownerPages, ferniePages);
+        }
+
+        /**
+         * Maps the owners and fernie counts of the nodes from a file. The owners are stored as one byte per node at the given
+         * position, followed by the fernie counts as little-endian ints, starting at the next multiple of 4 bytes after the owners.
+         * <p>
+         * The file is mapped privately (copy-on-write), so the moves of the agent change only the memory and never the file. The
+         * channel must therefore be open for reading and writing, and may be closed after the ring has been created.
+         * 
+         * @param channel  the channel
+         * @param position the position of the owners in the file
+         * @param size     the number of nodes
+         * @return the store, which still has to be attached to its ring by {@link #withRing(Ring)}
+         * @throws IOException if the file can't be mapped
+         */
+        static OffHeap map(FileChannel channel, long position, int size) throws IOException {
+            int pages = pages(size);
+            long ferniesPosition = position + ((size + 3L) & ~3L);
+            ByteBuffer[] ownerPages = new ByteBuffer[pages];
+            IntBuffer[] ferniePages = new IntBuffer[pages];
+            for (int p = 0; p < pages; p++) {
+                long from = (long) p << PAGE_BITS;
+                int length = (int) Math.min(size - from, PAGE_SIZE);
+                ownerPages[p] = channel.map(FileChannel.MapMode.PRIVATE, position + from, length);
+                ferniePages[p] = channel.map(FileChannel.MapMode.PRIVATE, ferniesPosition + 4 * from, 4L * length)
+                        .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            }
+            return new OffHeap(null, size, ownerPages, ferniePages);
+        }
+
+        /**
+         * Returns a store on the same buffers that belongs to a given ring.
+         * 
+         * @param ring the ring
+         * @return the store
+         */
+        OffHeap withRing(Ring ring) {
+            return new OffHeap(ring, size, owners, fernies);
+        }
+
+        private static int pages(int size) {
+            return (int) ((size + (long) PAGE_MASK) >>> PAGE_BITS);
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        Owner getOwner(int nodeNumber) {
+            return Owner.of(owners[nodeNumber >>> PAGE_BITS].get(nodeNumber & PAGE_MASK));
+        }
+
+        @Override
+        int getFernieCount(int nodeNumber) {
+            return fernies[nodeNumber >>> PAGE_BITS].get(nodeNumber & PAGE_MASK);
+        }
+
+        @Override
+        void set(int nodeNumber, Owner owner, int fernieCount) {
+            owners[nodeNumber >>> PAGE_BITS].put(nodeNumber & PAGE_MASK, (byte) owner.ordinal());
+            fernies[nodeNumber >>> PAGE_BITS].put(nodeNumber & PAGE_MASK, fernieCount);
+        }
+
+        @Override
+        Node getNode(int nodeNumber) {
+            return new Node(ring, nodeNumber);
+        }
+    }
+}
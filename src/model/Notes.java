@@ -8,6 +8,8 @@ import java.util.*;
  * or the visibility range), and about my agent's and the opponent's behavior (e.g. attacks or blocks).
  */
 public class Notes {
+    /** Number of rounds that the statistics of the opponent's behavior cover. */
+    public static final int WINDOW_SIZE = 10;
     private boolean initialAnalysis; //whether the first analysis in round 2 was carried out successfully
     static private int currentRound; //static because it needs to be accessed from points in the program were the notes object is not available
     private int visibilityRadius;
@@ -20,6 +22,15 @@ public class Notes {
     private double blockedAttacksTotal; //Relative number of my attacks that were blocked by the opponent during the game.
     private double blockedAttacksLastRound; //Relative number of my attacks that were blocked by the opponent during the previous round.
     private double attackBuffer; //The attack buffer is a multiplier used on the number of fernies my agent uses to attack to the opponent.
+    private TurnDiff lastTurn; //Changes of the nodes between the previous and the current round (not saved in the notes file).
+    //Statistics of the last rounds (see WINDOW_SIZE): attacks by the opponent (taken and repelled nodes), my attacks that were blocked, 
+    //nodes that I captured and nodes that I lost.
+    private final RollingWindow opponentAttacks = new RollingWindow(WINDOW_SIZE);
+    private final RollingWindow blockedAttacks = new RollingWindow(WINDOW_SIZE);
+    private final RollingWindow captures = new RollingWindow(WINDOW_SIZE);
+    private final RollingWindow losses = new RollingWindow(WINDOW_SIZE);
+    private final ThreatMap threats = new ThreatMap(); //Where the opponent has attacked in the last rounds.
+    private final BeliefMap beliefs = new BeliefMap(); //What the agent last saw of the nodes behind the fog of war.
     private double[] ratios; //The ratio of the different basic strategies used in the MixedStrategy. 
     //Element 0 = Expansion
     //Element 1 = Consolidation
@@ -243,6 +254,14 @@ public class Notes {
         return currentRound;
     }
 
+    /**
+     * Sets the current round number. Is used when the notes are kept in memory between rounds instead of being read from the notes file.
+     * @param round current round
+     */
+    public static void setCurrentRound(int round) {
+        currentRound = round;
+    }
+
     /**
      * Returns the total number of attacks by the opponent during the current game.
      * @return total number of attacks
@@ -259,6 +278,96 @@ public class Notes {
         this.totalAttacksByOpponent = totalAttacksByOpponent;
     }
 
+    /**
+     * Records the changes of the nodes between the previous and the current round: the nodes that I lost count as successful attacks
+     * by the opponent in the previous round. The changes are kept for the analyses of the current round, and the counts are added to
+     * the statistics of the last rounds.
+     * @param turn the changes of the nodes
+     */
+    public void recordTurn(TurnDiff turn) {
+        this.lastTurn = turn;
+        this.lastRoundAttacksByOpponent = turn.count(TurnDiff.Change.LOST);
+        this.totalAttacksByOpponent += lastRoundAttacksByOpponent;
+        opponentAttacks.add(turn.count(TurnDiff.Change.LOST) + turn.count(TurnDiff.Change.REPELLED));
+        blockedAttacks.add(turn.count(TurnDiff.Change.BLOCKED));
+        captures.add(turn.count(TurnDiff.Change.CAPTURED));
+        losses.add(turn.count(TurnDiff.Change.LOST));
+        threats.recordTurn(turn);
+    }
+
+    /**
+     * Returns the threat scores of the nodes, i.e. where the opponent has attacked in the last rounds.
+     * @return the threat scores
+     */
+    public ThreatMap getThreats() {
+        return threats;
+    }
+
+    /**
+     * Returns the beliefs about the nodes behind the fog of war, i.e. what the agent saw of them last.
+     * @return the beliefs
+     */
+    public BeliefMap getBeliefs() {
+        return beliefs;
+    }
+
+    /**
+     * Returns all statistics of the last rounds, in the order attacks by the opponent, blocked attacks, captures and losses. Is used to
+     * save and restore the statistics.
+     * @return the statistics
+     */
+    public RollingWindow[] getStatistics() {
+        return new RollingWindow[] { opponentAttacks, blockedAttacks, captures, losses };
+    }
+
+    /**
+     * Returns the number of attacks by the opponent in the last rounds, including the attacks that I repelled.
+     * @return attacks per round
+     */
+    public RollingWindow getOpponentAttacks() {
+        return opponentAttacks;
+    }
+
+    /**
+     * Returns the number of my attacks that were blocked by the opponent in the last rounds.
+     * @return blocked attacks per round
+     */
+    public RollingWindow getBlockedAttacks() {
+        return blockedAttacks;
+    }
+
+    /**
+     * Returns the number of nodes that I captured in the last rounds.
+     * @return captured nodes per round
+     */
+    public RollingWindow getCaptures() {
+        return captures;
+    }
+
+    /**
+     * Returns the number of nodes that I lost to the opponent in the last rounds.
+     * @return lost nodes per round
+     */
+    public RollingWindow getLosses() {
+        return losses;
+    }
+
+    /**
+     * Returns the changes of the nodes between the previous and the current round.
+     * @return the changes, or {@code null} if the previous round could not be compared
+     */
+    public TurnDiff getLastTurn() {
+        return lastTurn;
+    }
+
+    /**
+     * Returns the number of attacks by the opponent during the previous round.
+     * @return attacks during the previous round
+     */
+    public int getLastRoundAttacksByOpponent() {
+        return lastRoundAttacksByOpponent;
+    }
+
     /**
      * Sets the number of attacks by the opponent during the previous round.
      * @param lastRoundAttacksByOpponent attacks during the previous round
@@ -329,10 +438,17 @@ public class Notes {
                 "Used strategies (Expansion, Consolidation, AttackMax, AttackMin, Defensive): " + 
                 ratios[0] + "," + ratios[1] + "," + ratios[2] + "," + ratios[3] + "," + ratios[4] + System.lineSeparator() +
                 "Abandoned nodes: " + abandonedString + System.lineSeparator() +
-                "Initial analysis concluded: " + initialAnalysis;
+                "Initial analysis concluded: " + initialAnalysis + System.lineSeparator() +
+                "Opponent's attacks, blocked attacks, captures and losses (mean, trend of the last rounds): " + 
+                window(opponentAttacks) + "," + window(blockedAttacks) + "," + window(captures) + "," + window(losses);
     }
     //@formatter:on
 
+    // Formats the mean and the trend of a window.
+    private static String window(RollingWindow window) {
+        return String.format(Locale.ROOT, "%.2f/%+.2f", window.getMean(), window.getTrend());
+    }
+
     /**
      * Returns whether the initial analysis of the previous round has been successful.
      * @return { @code true } if the initial analysis was successful, { @code false} otherwise
@@ -1,6 +1,7 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import service.FallBack;
@@ -8,118 +9,226 @@ import service.FallBack;
 /**
  * Represents the output (to be written in the move file) that the agent
  * generates.
+ * <p>
+ * The lines are kept in insertion order in primitive arrays. Placements and removals on the same node are separate lines, which are
+ * found through an open-addressing hash table keyed by the node number and the kind of the line, so that {@link #upsert(int, int)} and
+ * {@link #remove(int, int)} take constant time.
  */
 public class Output {
     private final int ferniesTotal; // the total number of fernies my agent has available in the current round
-    private List<Line> outputList; // list with the lines to be written in the move.txt
+    // Lines to be written in the move.txt in insertion order: node number, fernies and hash key (node number and kind) of every line
+    private int[] lineNodes = new int[16];
+    private int[] lineFernies = new int[16];
+    private int[] lineKeys = new int[16];
+    private int size;
+    /*
+     * Hash table from key to line. A slot holds the line index + 1, 0 marks an empty slot. The table is at most half full, so a free
+     * slot is always found by linear probing.
+     */
+    private int[] table = new int[32];
+    /*
+     * Sum of all positive line values, i.e. the fernies that are placed. It is updated with every change of a line, so the budget check
+     * doesn't have to go through all lines.
+     */
+    private long placed;
 
     /**
      * Initializes the output with the number of fernies that the agent has
      * available in the current round (new fernies + already placed fernies).
-     * 
+     *
      * @param ferniesTotal total number of available fernies
      */
     public Output(int ferniesTotal) {
         this.ferniesTotal = ferniesTotal;
-        outputList = new ArrayList<Line>();
     }
 
     /**
      * Returns the output as a String list. If the current output is invalid, the Fallback strategy is carried out.
-     * 
+     *
      * @param ring the ring
      * @return output as String list
      */
     public List<String> getOutput(Ring ring) {
-        List<String> outputString = new ArrayList<String>();
-        if (!check()) {
+        Output output = getValidOutput(ring);
+        List<String> outputString = new ArrayList<String>(output.size);
+        for (int i = 0; i < output.size; i++) {
+            outputString.add(output.lineNodes[i] + "," + output.lineFernies[i]);
+        }
+        return outputString;
+    }
+
+    /**
+     * Returns this output if it is valid. Otherwise the Fallback strategy is carried out and its output is returned.
+     * <p>
+     * The output is valid if it doesn't place more fernies than available and every move is valid on the ring. To check the moves,
+     * the ring is rolled back to the start of the round and the compacted lines are applied as one batch (see
+     * {@link Ring#applyMoves(int[], int[])}), so afterwards the ring is in the state that the move file leads to.
+     *
+     * @param ring the ring
+     * @return valid output
+     */
+    public Output getValidOutput(Ring ring) {
+        if (!check() || ring != null && !replay(ring)) {
             System.out.println("Something's wrong with the output. Use FallBack strategy.");
-            Output fallback = new FallBack(null).move(ring); //The Fallback strategy doesn't use the notes, therefore this is just a dummy parameter.
-            for (Line line : fallback.outputList) {
-                outputString.add(line.nodeNumber + "," + line.fernies);
-            }
-            return outputString;
+            return new FallBack(null).move(ring); //The Fallback strategy doesn't use the notes, therefore this is just a dummy parameter.
         }
-        for (Line line : outputList) {
-            outputString.add(line.nodeNumber + "," + line.fernies);
+        return this;
+    }
+
+    /*
+     * Rolls the ring back to the start of the round and applies the moves again. Returns whether every move was valid. An attack may be
+     * carried out with fewer fernies than the line holds: if a strategy attacked a node several times, the fernies are added up to one
+     * attack, which is limited by the maximum number of fernies per node.
+     */
+    private boolean replay(Ring ring) {
+        Output moves = compact();
+        ring.rollback(0);
+        for (int result : ring.applyMoves(Arrays.copyOf(moves.lineNodes, moves.size), Arrays.copyOf(moves.lineFernies, moves.size))) {
+            if (result < 0) {
+                return false;
+            }
         }
-        return outputString;
+        return true;
     }
 
     // Helper method to check if more fernies have been used than were available
     // this round.
     private boolean check() {
-        int sum = 0;
-        for (Line line : outputList) {
-            //Since the ferniesTotal attribute already includes all fernies the agent own (already placed and new), the removals may not be counted because they are
-            //already factored in. Therefore only the placements are counted.
-            if (line.fernies > 0) {
-                sum += line.fernies;
+        //Since the ferniesTotal attribute already includes all fernies the agent own (already placed and new), the removals may not be counted because they are
+        //already factored in. Therefore only the placements are counted.
+        return ferniesTotal >= placed;
+    }
+
+    /**
+     * Returns a compacted copy of this output with one line per node: all placements and removals of a node are netted into one signed
+     * number of fernies, nodes whose fernies cancel out are dropped, and the lines are sorted by node number.
+     * <p>
+     * The compacted output never places more fernies than this output, since only placements and removals on the same node cancel out.
+     *
+     * @return compacted output
+     */
+    public Output compact() {
+        /*
+         * Every line is packed into a long with the node number in the upper and the line index in the lower half, so sorting the longs
+         * sorts the lines by node number and keeps the lines of a node together.
+         */
+        long[] packed = new long[size];
+        for (int line = 0; line < size; line++) {
+            packed[line] = (long) lineNodes[line] << 32 | line;
+        }
+        Arrays.sort(packed);
+        Output compacted = new Output(ferniesTotal);
+        int i = 0;
+        while (i < size) {
+            int nodeNumber = (int) (packed[i] >> 32);
+            long delta = 0;
+            for (; i < size && (int) (packed[i] >> 32) == nodeNumber; i++) {
+                delta += lineFernies[(int) packed[i]];
+            }
+            if (delta > 0) {
+                compacted.upsert(nodeNumber, (int) delta);
+            } else if (delta < 0) {
+                compacted.remove(nodeNumber, (int) -delta);
             }
         }
-        return ferniesTotal >= sum;
+        return compacted;
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return number of lines
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the node number of a line.
+     *
+     * @param line the index of the line in insertion order
+     * @return the node number
+     */
+    public int getNodeNumber(int line) {
+        return lineNodes[line];
+    }
+
+    /**
+     * Returns the fernies of a line (negative for removals).
+     *
+     * @param line the index of the line in insertion order
+     * @return the fernies to be placed or removed
+     */
+    public int getFernies(int line) {
+        return lineFernies[line];
     }
 
     /**
      * Inserts or updates a node with the number of fernies to be placed on it.
-     * 
+     *
      * @param nodeNumber the node number
      * @param fernies    the number of fernies to be placed on it
      */
     public void upsert(int nodeNumber, int fernies) {
         // Avoids duplicate lines by upserting
-        for (Line line : outputList) {
-            if (line.nodeNumber == nodeNumber && line.fernies >= 0) {
-                line.fernies += fernies;
-                return;
-            }
-        }
-        outputList.add(new Line(nodeNumber, fernies));
+        add(nodeNumber << 1, nodeNumber, fernies);
     }
 
     /**
      * Removes a given number of fernies from the node.
-     * 
+     *
      * @param nodeNumber the node number
      * @param fernies    the number of fernies to be removed
      */
     public void remove(int nodeNumber, int fernies) {
-        fernies = -fernies;
         // Avoids duplicate lines
-        for (Line line : outputList) {
-            if (line.nodeNumber == nodeNumber && line.fernies < 0) {
-                line.fernies += fernies;
+        add(nodeNumber << 1 | 1, nodeNumber, -fernies);
+    }
+
+    // Adds fernies to the line with the given key, or appends a new line if there is none.
+    private void add(int key, int nodeNumber, int fernies) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            int line = table[slot] - 1;
+            if (lineKeys[line] == key) {
+                int old = lineFernies[line];
+                lineFernies[line] = old + fernies;
+                placed += Math.max(old + fernies, 0) - Math.max(old, 0);
                 return;
             }
+            slot = (slot + 1) & mask;
+        }
+        if (size == lineNodes.length) {
+            lineNodes = Arrays.copyOf(lineNodes, size * 2);
+            lineFernies = Arrays.copyOf(lineFernies, size * 2);
+            lineKeys = Arrays.copyOf(lineKeys, size * 2);
+        }
+        lineNodes[size] = nodeNumber;
+        lineFernies[size] = fernies;
+        lineKeys[size] = key;
+        placed += Math.max(fernies, 0);
+        table[slot] = ++size;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
         }
-        outputList.add(new Line(nodeNumber, fernies));
     }
 
-    /**
-     * Represents one line in the output file.
-     */
-    private static class Line {
-        private int nodeNumber;
-        private int fernies;
-
-        /**
-         * Initializes the line with the node number and the fernies to be placed or
-         * removed.
-         * 
-         * @param nodeNumber the node number
-         * @param fernies    fernies to be placed or removed
-         */
-        private Line(int nodeNumber, int fernies) {
-            this.nodeNumber = nodeNumber;
-            this.fernies = fernies;
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int line = 0; line < size; line++) {
+            int slot = hash(lineKeys[line]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = line + 1;
         }
+    }
 
-        /**
-         * Returns the line as String.
-         */
-        @Override
-        public String toString() {
-            return nodeNumber + " " + fernies + ",";
-        }
+    // Spreads the consecutive keys of neighboring nodes over the table (Fibonacci hashing).
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 }
@@ -21,4 +21,16 @@ public enum Owner {
      * Node belongs to the opponent.
      */
     THEIRS;
+
+    private static final Owner[] VALUES = values();
+
+    /**
+     * Returns the owner with a given ordinal. Is used to decode owners that are stored as bytes in primitive arrays.
+     *
+     * @param ordinal the ordinal of the owner
+     * @return the owner
+     */
+    public static Owner of(int ordinal) {
+        return VALUES[ordinal];
+    }
 }
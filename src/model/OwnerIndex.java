@@ -0,0 +1,257 @@
+package model;
+
+/**
+ * Keeps an index of the nodes of a {@link Ring} for every {@link Owner}, together with aggregates that the strategies query several
+ * times per turn:
+ * <ul>
+ * <li>the node numbers owned by the owner (bitset, so they can be iterated in ascending order)</li>
+ * <li>the number of nodes and the total number of fernies</li>
+ * <li>the number of nodes that are occupied to maximum fernie capacity</li>
+ * <li>the sum of fernies above one (fernies that could be removed without losing the node)</li>
+ * </ul>
+ * The index is built once when the ring is created and updated in O(1) whenever a node changes its owner or fernie count.
+ */
+final class OwnerIndex {
+    private final int maxFerniesPerNode;
+    private final long[][] bits; // one bitset per owner, indexed by the ordinal of the owner
+    private final int[] nodeCount;
+    private final long[] fernies;
+    private final int[] fullNodes;
+    private final long[] surplus;
+
+    /**
+     * Builds the index for the nodes of a given store.
+     *
+     * @param store             the node store
+     * @param maxFerniesPerNode the maximum number of fernies per node
+     */
+    OwnerIndex(NodeStore store, int maxFerniesPerNode) {
+        int owners = Owner.values().length;
+        this.maxFerniesPerNode = maxFerniesPerNode;
+        this.bits = new long[owners][(store.size() + 63) >>> 6];
+        this.nodeCount = new int[owners];
+        this.fernies = new long[owners];
+        this.fullNodes = new int[owners];
+        this.surplus = new long[owners];
+        if (store instanceof NodeStore.OfArrays arrays) {
+            addAll(arrays.getOwners(), arrays.getFernies());
+        } else {
+            for (int i = 0; i < store.size(); i++) {
+                add(i, store.getOwner(i).ordinal(), store.getFernieCount(i));
+            }
+        }
+    }
+
+    /*
+     * Builds the index from primitive arrays. First the bitsets are filled in one pass. The node count of every owner is then the
+     * population count of its bitset, and the fernie aggregates are summed over the set bits only, so every fernie count is read once
+     * and the loops don't branch on the owner. The comparisons in the sums are turned into 0/1 values without branches, since the
+     * fernie counts are too irregular for branch prediction.
+     *
+     * On large rings the chunks of the ring are processed in parallel (see ParallelScan). Every chunk fills its own words of the bitsets
+     * and its own aggregates, which are added up in chunk order afterwards.
+     */
+    private void addAll(byte[] owners, int[] counts) {
+        // Aggregates per chunk: node count, fernies, full nodes and surplus of every owner
+        long[][] partial = new long[ParallelScan.chunks(owners.length)][4 * bits.length];
+        ParallelScan.forEachChunk(owners.length, (chunk, from, to) -> {
+            for (int i = from; i < to; i++) {
+                bits[owners[i]][i >>> 6] |= 1L << i;
+            }
+            long[] aggregates = partial[chunk];
+            for (int owner = 0; owner < bits.length; owner++) {
+                long[] words = bits[owner];
+                int nodes = 0;
+                long sum = 0;
+                int full = 0;
+                long above = 0;
+                for (int w = from >>> 6; w < (to + 63) >>> 6; w++) {
+                    long word = words[w];
+                    nodes += Long.bitCount(word);
+                    int base = w << 6;
+                    while (word != 0) {
+                        int count = counts[base + Long.numberOfTrailingZeros(word)];
+                        word &= word - 1;
+                        sum += count;
+                        full += (maxFerniesPerNode - 1 - count) >>> 31; // 1 if count >= maxFerniesPerNode
+                        above += Math.max(count - 1, 0);
+                    }
+                }
+                aggregates[4 * owner] = nodes;
+                aggregates[4 * owner + 1] = sum;
+                aggregates[4 * owner + 2] = full;
+                aggregates[4 * owner + 3] = above;
+            }
+        });
+        for (long[] aggregates : partial) {
+            for (int owner = 0; owner < bits.length; owner++) {
+                nodeCount[owner] += (int) aggregates[4 * owner];
+                fernies[owner] += aggregates[4 * owner + 1];
+                fullNodes[owner] += (int) aggregates[4 * owner + 2];
+                surplus[owner] += aggregates[4 * owner + 3];
+            }
+        }
+    }
+
+    /**
+     * Updates the index after a node has changed.
+     *
+     * @param nodeNumber the node number
+     * @param oldOwner   the owner before the change
+     * @param oldCount   the fernie count before the change
+     * @param newOwner   the owner after the change
+     * @param newCount   the fernie count after the change
+     */
+    void update(int nodeNumber, Owner oldOwner, int oldCount, Owner newOwner, int newCount) {
+        remove(nodeNumber, oldOwner.ordinal(), oldCount);
+        add(nodeNumber, newOwner.ordinal(), newCount);
+    }
+
+    private void add(int nodeNumber, int owner, int count) {
+        bits[owner][nodeNumber >>> 6] |= 1L << nodeNumber;
+        nodeCount[owner]++;
+        fernies[owner] += count;
+        if (count >= maxFerniesPerNode) {
+            fullNodes[owner]++;
+        }
+        if (count > 1) {
+            surplus[owner] += count - 1;
+        }
+    }
+
+    private void remove(int nodeNumber, int owner, int count) {
+        bits[owner][nodeNumber >>> 6] &= ~(1L << nodeNumber);
+        nodeCount[owner]--;
+        fernies[owner] -= count;
+        if (count >= maxFerniesPerNode) {
+            fullNodes[owner]--;
+        }
+        if (count > 1) {
+            surplus[owner] -= count - 1;
+        }
+    }
+
+    /**
+     * Returns the number of nodes of an owner.
+     *
+     * @param owner the owner
+     * @return number of nodes
+     */
+    int count(Owner owner) {
+        return nodeCount[owner.ordinal()];
+    }
+
+    /**
+     * Returns the total number of fernies of an owner.
+     *
+     * @param owner the owner
+     * @return number of fernies
+     */
+    long fernies(Owner owner) {
+        return fernies[owner.ordinal()];
+    }
+
+    /**
+     * Returns whether all nodes of an owner are occupied to maximum fernie capacity.
+     *
+     * @param owner the owner
+     * @return {@code true} if all nodes are full, {@code false} otherwise
+     */
+    boolean isFull(Owner owner) {
+        return fullNodes[owner.ordinal()] == nodeCount[owner.ordinal()];
+    }
+
+    /**
+     * Returns the sum of fernies above one on the nodes of an owner.
+     *
+     * @param owner the owner
+     * @return surplus fernies
+     */
+    long surplus(Owner owner) {
+        return surplus[owner.ordinal()];
+    }
+
+    /**
+     * Returns whether a node belongs to an owner.
+     *
+     * @param owner      the owner
+     * @param nodeNumber the node number
+     * @return {@code true} if the node belongs to the owner
+     */
+    boolean contains(Owner owner, int nodeNumber) {
+        return (bits[owner.ordinal()][nodeNumber >>> 6] & 1L << nodeNumber) != 0;
+    }
+
+    /**
+     * Returns the number of nodes of an owner in the range [from, to). The range is counted word by word, i.e. 64 nodes per step.
+     *
+     * @param owner the owner
+     * @param from  the first node number of the range
+     * @param to    the node number after the range
+     * @return number of nodes
+     */
+    int count(Owner owner, int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        long[] words = bits[owner.ordinal()];
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            return Long.bitCount(words[first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(words[first] & firstMask);
+        for (int w = first + 1; w < last; w++) {
+            count += Long.bitCount(words[w]);
+        }
+        return count + Long.bitCount(words[last] & lastMask);
+    }
+
+    /**
+     * Returns the smallest node number >= a given node number that belongs to an owner.
+     *
+     * @param owner      the owner
+     * @param nodeNumber the node number where the search starts
+     * @return the node number, or -1 if there is no such node
+     */
+    int nextNode(Owner owner, int nodeNumber) {
+        long[] words = bits[owner.ordinal()];
+        int w = nodeNumber >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << nodeNumber);
+        while (word == 0) {
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Returns the largest node number <= a given node number that belongs to an owner.
+     *
+     * @param owner      the owner
+     * @param nodeNumber the node number where the search starts
+     * @return the node number, or -1 if there is no such node
+     */
+    int previousNode(Owner owner, int nodeNumber) {
+        if (nodeNumber < 0) {
+            return -1;
+        }
+        long[] words = bits[owner.ordinal()];
+        int w = nodeNumber >>> 6;
+        long word = words[w] & (-1L >>> (63 - (nodeNumber & 63)));
+        while (word == 0) {
+            if (--w < 0) {
+                return -1;
+            }
+            word = words[w];
+        }
+        return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+    }
+}
@@ -0,0 +1,134 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs scans over very large rings in parallel on the shared {@link ForkJoinPool#commonPool() common pool}.
+ * <p>
+ * A scan is split into chunks of {@link #CHUNK_SIZE} consecutive nodes. The chunk size is a multiple of 64, so tasks never write to the
+ * same word of a bitset. Each chunk writes only its own part of the result, and the parts are combined in chunk order, so the result is
+ * exactly the same as that of a sequential scan.
+ * <p>
+ * Rings with fewer nodes than the threshold given by the system property {@code ringwars.parallelThreshold} (default 2^21), or a
+ * common pool without parallelism, are scanned sequentially chunk by chunk on the calling thread.
+ */
+public final class ParallelScan {
+    /** Number of nodes per chunk. */
+    public static final int CHUNK_SIZE = 1 << 16;
+    private static final int THRESHOLD = Integer.getInteger("ringwars.parallelThreshold", 1 << 21);
+
+    private ParallelScan() {
+    }
+
+    /**
+     * Action that is carried out for one chunk of a scan.
+     */
+    @FunctionalInterface
+    public interface ChunkAction {
+        /**
+         * Processes the nodes [from, to) of a chunk.
+         * @param chunk the index of the chunk
+         * @param from the first node number of the chunk
+         * @param to the node number after the chunk
+         */
+        void run(int chunk, int from, int to);
+    }
+
+    /**
+     * Function that computes a partial sum for one chunk of a scan.
+     */
+    @FunctionalInterface
+    public interface ChunkSum {
+        /**
+         * Computes the sum over the nodes [from, to).
+         * @param from the first node number
+         * @param to the node number after the last node
+         * @return the sum
+         */
+        long sum(int from, int to);
+    }
+
+    /**
+     * Returns the number of chunks of a scan over a given number of nodes.
+     * @param size the number of nodes
+     * @return the number of chunks
+     */
+    public static int chunks(int size) {
+        return (int) (((long) size + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    // Returns the node number after a chunk. It is computed in long, since it would overflow for the last chunk of a ring close to
+    // Integer.MAX_VALUE nodes.
+    private static int end(int chunk, int size) {
+        return (int) Math.min((long) (chunk + 1) * CHUNK_SIZE, size);
+    }
+
+    /**
+     * Returns whether a scan over a given number of nodes runs in parallel.
+     * @param size the number of nodes
+     * @return {@code true} if the chunks are processed in parallel
+     */
+    public static boolean isParallel(int size) {
+        return size >= THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    /**
+     * Carries out an action for every chunk of a scan over a given number of nodes. The action must only write to the part of the
+     * result that belongs to its chunk.
+     * @param size the number of nodes
+     * @param action the action
+     */
+    public static void forEachChunk(int size, ChunkAction action) {
+        int chunks = chunks(size);
+        if (isParallel(size)) {
+            ForkJoinPool.commonPool().invoke(new ChunkTask(action, size, 0, chunks));
+        } else {
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                action.run(chunk, chunk * CHUNK_SIZE, end(chunk, size));
+            }
+        }
+    }
+
+    /**
+     * Computes a sum over a given number of nodes from the partial sums of the chunks.
+     * @param size the number of nodes
+     * @param sum the function computing a partial sum
+     * @return the sum
+     */
+    public static long sum(int size, ChunkSum sum) {
+        long[] parts = new long[chunks(size)];
+        forEachChunk(size, (chunk, from, to) -> parts[chunk] = sum.sum(from, to));
+        long total = 0;
+        for (long part : parts) {
+            total += part;
+        }
+        return total;
+    }
+
+    // Task that processes a range of chunks, splitting it in halves until a single chunk is left.
+    private static class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final transient ChunkAction action;
+        private final int size;
+        private final int first;
+        private final int last;
+
+        private ChunkTask(ChunkAction action, int size, int first, int last) {
+            this.action = action;
+            this.size = size;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first == 1) {
+                action.run(first, first * CHUNK_SIZE, end(first, size));
+            } else {
+                int middle = (first + last) >>> 1;
+                invokeAll(new ChunkTask(action, size, first, middle), new ChunkTask(action, size, middle, last));
+            }
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package model;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.*;
-import java.util.function.Predicate;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
 
 /**
  * Represents the current status of the playing field and associated informations.
@@ -12,12 +15,44 @@ import java.util.function.Predicate;
  * <li>the maximum number of fernies that the agent has available this round (new fernies + all fernies on nodes owned by the agent)</li>
  * </ul>
  */
-public class Ring {
+public final class Ring implements RingState {
     /*
-     * In the node list all nodes are stored ordered by node number. I intentionally use an array and not a list, because the the number of nodes
-     * shall be fixed at the beginning, and no nodes may be added afterwards.
+     * In the node store all nodes are stored ordered by node number. I intentionally use an array and not a list, because the the number of nodes
+     * shall be fixed at the beginning, and no nodes may be added afterwards. Depending on the storage layout, the array contains Node objects
+     * or the owners and fernie counts are stored in primitive arrays or in buffers outside of the heap.
      */
-    private Node[] nodeList;
+    private final NodeStore store;
+    /*
+     * Per-owner index of the nodes and their fernie totals. It is updated whenever a node changes, so the queries by owner don't have
+     * to scan the whole ring.
+     */
+    private final OwnerIndex index;
+    // Run-length index of the segments of nodes with the same owner, used for the free-neighbor queries.
+    private final RunIndex runs;
+    /*
+     * Cached distances to the closest node of each owner (see getDistance). The version of an owner is incremented whenever a node changes
+     * from or to that owner, the cache is only valid as long as its version matches.
+     */
+    private final int[] ownerVersions = new int[Owner.values().length];
+    private final int[][] distances = new int[Owner.values().length][];
+    private final int[] distanceVersions = new int[Owner.values().length];
+    // Nodes grouped by owner and fernie count for the min/max queries. It is only built when it is queried for the first time.
+    private CountIndex counts;
+    /*
+     * Random number generator for all random decisions of the turn (e.g. ties of the min/max queries). It can be replaced by a seeded
+     * generator, so that a turn can be reproduced.
+     */
+    private SplittableRandom random = new SplittableRandom();
+    /*
+     * Journal of all changes since the ring was created: for every change the node number, and the owner, fernie count and available
+     * fernies before the change. Rolling back to a mark undoes the changes in reverse order, so trying moves doesn't require a copy of
+     * the ring.
+     */
+    private int[] journalNodes = new int[64];
+    private byte[] journalOwners = new byte[64];
+    private int[] journalCounts = new int[64];
+    private int[] journalAvailable = new int[64];
+    private int journalSize;
     /*
      * Maximum amount of fernies per node. Attribute is final because this number
      * doesn't change over the course of the game.
@@ -53,21 +88,196 @@ public class Ring {
      * @param availableFernies  the newly received fernies in the current round
      */
     public Ring(Node[] nodeList, int maxFerniesPerNode, int availableFernies) {
-        this.nodeList = nodeList;
+        this(ring -> {
+            for (Node node : nodeList) {
+                node.attach(ring);
+            }
+            return new NodeStore.OfObjects(nodeList);
+        }, maxFerniesPerNode, availableFernies);
+    }
+
+    /**
+     * Creates a new {@code Ring} that stores its nodes in primitive arrays ({@link StorageLayout#ARRAYS}). The arrays are used directly
+     * and are not copied.
+     *
+     * @param owners            the owners of the nodes (ordinal of the {@link Owner}), sorted by node number
+     * @param fernies           the fernie counts of the nodes, sorted by node number
+     * @param maxFerniesPerNode the maximum number of fernies allowed on a node
+     * @param availableFernies  the newly received fernies in the current round
+     */
+    public Ring(byte[] owners, int[] fernies, int maxFerniesPerNode, int availableFernies) {
+        this(ring -> new NodeStore.OfArrays(ring, owners, fernies), maxFerniesPerNode, availableFernies);
+    }
+
+    // Creates the ring with the store created by a given function, which receives the new ring for the node views.
+    private Ring(Function<Ring, NodeStore> storeFactory, int maxFerniesPerNode, int availableFernies) {
+        this.store = storeFactory.apply(this);
+        this.index = new OwnerIndex(store, maxFerniesPerNode);
+        this.runs = new RunIndex(store);
         this.maxFerniesPerNode = maxFerniesPerNode;
         this.availableFernies = availableFernies;
         this.maxFerniesThisRound = availableFernies + getFernies(Owner.MINE);
     }
 
+    /**
+     * Creates a new {@code Ring} with a given storage layout from the owners and fernie counts of its nodes.
+     *
+     * @param owners            the owners of the nodes (ordinal of the {@link Owner}), sorted by node number
+     * @param fernies           the fernie counts of the nodes, sorted by node number
+     * @param maxFerniesPerNode the maximum number of fernies allowed on a node
+     * @param availableFernies  the newly received fernies in the current round
+     * @param layout            the storage layout
+     * @return the ring
+     */
+    public static Ring create(byte[] owners, int[] fernies, int maxFerniesPerNode, int availableFernies, StorageLayout layout) {
+        if (layout == StorageLayout.ARRAYS) {
+            return new Ring(owners, fernies, maxFerniesPerNode, availableFernies);
+        }
+        if (layout == StorageLayout.OFF_HEAP) {
+            return new Ring(ring -> NodeStore.OffHeap.allocate(ring, owners, fernies), maxFerniesPerNode, availableFernies);
+        }
+        Node[] nodeList = new Node[fernies.length];
+        for (int i = 0; i < nodeList.length; i++) {
+            nodeList[i] = new Node(i, Owner.of(owners[i]), fernies[i]);
+        }
+        return new Ring(nodeList, maxFerniesPerNode, availableFernies);
+    }
+
+    /**
+     * Creates a new {@code Ring} ({@link StorageLayout#OFF_HEAP}) whose nodes are mapped from a file, so the ring doesn't have to be
+     * read into memory. The file holds the owners as one byte per node (ordinal of the {@link Owner}) at the given position, followed
+     * by the fernie counts as little-endian ints, starting at the next multiple of 4 bytes after the owners.
+     * <p>
+     * The file is mapped copy-on-write: the moves change the ring, but never the file. The channel must be open for reading and
+     * writing and can be closed after the ring has been created.
+     *
+     * @param channel           the channel of the file
+     * @param position          the position of the owners in the file
+     * @param nodeCount         the number of nodes
+     * @param maxFerniesPerNode the maximum number of fernies allowed on a node
+     * @param availableFernies  the newly received fernies in the current round
+     * @return the ring
+     * @throws IOException if the file can't be mapped
+     */
+    public static Ring map(FileChannel channel, long position, int nodeCount, int maxFerniesPerNode, int availableFernies)
+            throws IOException {
+        NodeStore.OffHeap mapped = NodeStore.OffHeap.map(channel, position, nodeCount);
+        return new Ring(mapped::withRing, maxFerniesPerNode, availableFernies);
+    }
+
     /**
      * Returns the number of nodes on the ring.
      * 
      * @return number of nodes
      */
     public int getNodeCount() {
-        return nodeList.length;
+        return store.size();
+    }
+
+    /**
+     * Returns the owner of the node with a given node number without creating a {@link Node} object.
+     * 
+     * @param nodeNumber the node number
+     * @return the owner
+     */
+    public Owner getOwner(int nodeNumber) {
+        return store.getOwner(nodeNumber);
+    }
+
+    /**
+     * Returns the fernie count of the node with a given node number without creating a {@link Node} object.
+     * 
+     * @param nodeNumber the node number
+     * @return the fernie count
+     */
+    public int getFernieCount(int nodeNumber) {
+        return store.getFernieCount(nodeNumber);
+    }
+
+    /**
+     * Changes the owner and fernie count of a node. All changes of nodes are routed through this method, so that the owner index and
+     * the run-length index stay up to date and the change is recorded in the journal.
+     * 
+     * @param nodeNumber  the node number
+     * @param owner       the new owner
+     * @param fernieCount the new fernie count
+     */
+    void set(int nodeNumber, Owner owner, int fernieCount) {
+        record(nodeNumber);
+        apply(nodeNumber, owner, fernieCount);
+    }
+
+    // Changes a node and updates all indexes, without writing the journal.
+    private void apply(int nodeNumber, Owner owner, int fernieCount) {
+        Owner oldOwner = store.getOwner(nodeNumber);
+        int oldCount = store.getFernieCount(nodeNumber);
+        store.set(nodeNumber, owner, fernieCount);
+        index.update(nodeNumber, oldOwner, oldCount, owner, fernieCount);
+        if (counts != null) {
+            counts.update(nodeNumber, oldOwner, oldCount, owner, fernieCount);
+        }
+        if (owner != oldOwner) {
+            runs.update(nodeNumber);
+            ownerVersions[oldOwner.ordinal()]++;
+            ownerVersions[owner.ordinal()]++;
+        }
+    }
+
+
+    // Appends the current state of a node to the journal.
+    private void record(int nodeNumber) {
+        if (journalSize == journalNodes.length) {
+            int capacity = journalSize * 2;
+            journalNodes = Arrays.copyOf(journalNodes, capacity);
+            journalOwners = Arrays.copyOf(journalOwners, capacity);
+            journalCounts = Arrays.copyOf(journalCounts, capacity);
+            journalAvailable = Arrays.copyOf(journalAvailable, capacity);
+        }
+        journalNodes[journalSize] = nodeNumber;
+        journalOwners[journalSize] = (byte) store.getOwner(nodeNumber).ordinal();
+        journalCounts[journalSize] = store.getFernieCount(nodeNumber);
+        journalAvailable[journalSize] = availableFernies;
+        journalSize++;
     }
 
+    /**
+     * Returns a mark of the current state of the ring, to which the ring can be rolled back by {@link #rollback(int)}. The mark 0 is
+     * the state in which the ring was created.
+     * 
+     * @return the mark
+     */
+    public int mark() {
+        return journalSize;
+    }
+
+    /**
+     * Undoes all changes made since a given mark, including the changes of the available fernies. The cost is proportional to the
+     * number of undone changes.
+     * 
+     * @param mark a mark returned by {@link #mark()}, or 0 to restore the state in which the ring was created
+     */
+    public void rollback(int mark) {
+        if (mark < 0 || mark > journalSize) {
+            throw new IllegalArgumentException("Invalid mark " + mark + " (journal has " + journalSize + " changes).");
+        }
+        if (mark == journalSize) {
+            return;
+        }
+        for (int i = journalSize - 1; i >= mark; i--) {
+            apply(journalNodes[i], Owner.of(journalOwners[i]), journalCounts[i]);
+        }
+        availableFernies = journalAvailable[mark];
+        journalSize = mark;
+    }
+
+    /**
+     * Returns the maximum number of fernies allowed per node.
+     * 
+     * @return maximum number of fernies per node
+     */
+    public int getMaxFerniesPerNode() {
+        return maxFerniesPerNode;
+    }
 
     /**
      * Returns the list of nodes that are visible to the agent.
@@ -76,9 +286,9 @@ public class Ring {
      */
     public List<Node> getVisibleNodes() {
         List<Node> visible = new ArrayList<>();
-        for (Node node : nodeList) {
-            if (node.isVisible()) {
-                visible.add(node);
+        for (int i = 0; i < store.size(); i++) {
+            if (store.getOwner(i) != Owner.UNKNOWN) {
+                visible.add(store.getNode(i));
             }
         }
         return visible;
@@ -91,13 +301,11 @@ public class Ring {
      * @return nodes that are invisible to the opponent
      */
     public List<Node> getInvisibleForOpponent(int visibility) {
-        List<Node> result = new ArrayList<>();
-        for (Node node : nodeList) {
-            if (!isVisibleForOpponent(node, visibility) && node.isVisible() && node.getOwner() != Owner.THEIRS) {
-                result.add(node);
-            }
-        }
-        return result;
+        int[] theirs = distances(Owner.THEIRS);
+        return collect(null, i -> {
+            Owner owner = store.getOwner(i);
+            return owner != Owner.UNKNOWN && owner != Owner.THEIRS && theirs[i] > visibility;
+        });
     }
 
     /**
@@ -107,32 +315,108 @@ public class Ring {
      * @return nodes that are visible to the opponent
      */
     public List<Node> getVisibleForOpponent(int visibility) {
-        List<Node> result = new ArrayList<>();
-        for (Node node : nodeList) {
-            if (isVisibleForOpponent(node, visibility) && node.getOwner() == Owner.MINE) {
-                result.add(node);
+        int[] theirs = distances(Owner.THEIRS);
+        return collect(Owner.MINE, i -> theirs[i] <= visibility);
+    }
+
+    /*
+     * Returns the nodes for which a test is true, sorted by node number. If an owner is given, only the nodes of the owner are tested,
+     * which are found in the owner index. The chunks of the ring are tested in parallel on large rings (see ParallelScan): every chunk
+     * collects the node numbers it found in its own array, and the arrays are concatenated in chunk order.
+     */
+    private List<Node> collect(Owner owner, IntPredicate test) {
+        int n = store.size();
+        int[][] found = new int[ParallelScan.chunks(n)][];
+        int[] sizes = new int[found.length];
+        ParallelScan.forEachChunk(n, (chunk, from, to) -> {
+            int[] nodes = new int[16];
+            int size = 0;
+            int i = owner == null ? from : index.nextNode(owner, from);
+            while (i != -1 && i < to) {
+                if (test.test(i)) {
+                    if (size == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, size * 2);
+                    }
+                    nodes[size++] = i;
+                }
+                i = owner == null ? i + 1 : index.nextNode(owner, i + 1);
+            }
+            found[chunk] = nodes;
+            sizes[chunk] = size;
+        });
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        List<Node> result = new ArrayList<Node>(total);
+        for (int chunk = 0; chunk < found.length; chunk++) {
+            for (int j = 0; j < sizes[chunk]; j++) {
+                result.add(store.getNode(found[chunk][j]));
             }
         }
         return result;
     }
 
     /**
-     * Returns whether a given node is visible for the opponent. The visibility used is the one calculated at the beginning of each
-     * round by { @link Util }.
-     * @param node the node
-     * @param visibility the visibility radius
-     * @return true if the node is visible for the opponent, false otherwise
-     */
-    private boolean isVisibleForOpponent(Node node, int visibility) {
-        boolean visible = false;
-        for (int i = 0; i <= visibility; i++) {
-            int nextIndex = (node.getNodeNumber() + i) % nodeList.length;
-            int prevIndex = (node.getNodeNumber() - i + nodeList.length) % nodeList.length;
-            if (nodeList[nextIndex].getOwner() == Owner.THEIRS || nodeList[prevIndex].getOwner() == Owner.THEIRS) {
-                visible = true;
-            }
+     * Returns the distance (number of steps along the ring in either direction) from a node to the closest node of a given owner. A node
+     * owned by the owner has the distance 0.
+     * <p>
+     * The distances of all nodes are computed together by a circular distance transform in O(n) and cached until a node changes from or
+     * to the given owner.
+     * 
+     * @param nodeNumber the node number
+     * @param owner the owner
+     * @return the distance, or {@link Integer#MAX_VALUE} if there is no node of the owner
+     */
+    public int getDistance(int nodeNumber, Owner owner) {
+        return distances(owner)[nodeNumber];
+    }
+
+    // Returns the cached distances to the closest node of an owner, recomputing them if a node has changed from or to the owner.
+    private int[] distances(Owner owner) {
+        int o = owner.ordinal();
+        if (distances[o] == null || distanceVersions[o] != ownerVersions[o]) {
+            distances[o] = computeDistances(owner, distances[o]);
+            distanceVersions[o] = ownerVersions[o];
         }
-        return visible;
+        return distances[o];
+    }
+
+    /*
+     * Two passes over the ring: the forward pass computes the distance to the closest node of the owner before each node, the backward
+     * pass the distance to the closest node after it. The passes start with the distance carried over the end of the ring, so the
+     * wrap-around is handled without a third pass.
+     *
+     * The passes are carried out per chunk of the ring (in parallel on large rings, see ParallelScan). Each chunk starts its passes
+     * with the distances to the closest nodes of the owner before and after the chunk, which are looked up in the owner index, so
+     * the chunks don't depend on each other and the result is the same as for a single pass.
+     */
+    private int[] computeDistances(Owner owner, int[] result) {
+        int length = store.size();
+        int[] distances = result == null ? new int[length] : result;
+        int first = index.nextNode(owner, 0);
+        if (first == -1) {
+            Arrays.fill(distances, Integer.MAX_VALUE);
+            return distances;
+        }
+        int last = index.previousNode(owner, length - 1);
+        ParallelScan.forEachChunk(length, (chunk, from, to) -> {
+            int before = index.previousNode(owner, from - 1);
+            int distance = from - 1 - (before == -1 ? last - length : before);
+            for (int i = from; i < to; i++) {
+                distance = store.getOwner(i) == owner ? 0 : distance + 1;
+                distances[i] = distance;
+            }
+            int after = to < length ? index.nextNode(owner, to) : -1;
+            distance = (after == -1 ? first + length : after) - to;
+            for (int i = to - 1; i >= from; i--) {
+                distance = store.getOwner(i) == owner ? 0 : distance + 1;
+                if (distance < distances[i]) {
+                    distances[i] = distance;
+                }
+            }
+        });
+        return distances;
     }
 
     /**
@@ -141,21 +425,25 @@ public class Ring {
      * @return {@code true} if opponent is visible, {@code false} otherwise
      */
     public boolean isOpponentVisible() {
-        boolean result = false;
-        for (Node node : getVisibleNodes()) {
-            if (node.getOwner() == Owner.THEIRS) {
-                result = true;
-            }
-        }
-        return result;
+        return index.count(Owner.THEIRS) > 0;
     }
 
     /**
      * Returns the complete node list.
+     * <p>
+     * If the ring stores its nodes in primitive arrays, a new array of node views is created on every call. Loops over the whole ring
+     * should therefore rather use {@link #getOwner(int)} and {@link #getFernieCount(int)}.
      * 
      * @return node list
      */
     public Node[] getNodes() {
+        if (store instanceof NodeStore.OfObjects objects) {
+            return objects.getNodes();
+        }
+        Node[] nodeList = new Node[store.size()];
+        for (int i = 0; i < nodeList.length; i++) {
+            nodeList[i] = store.getNode(i);
+        }
         return nodeList;
     }
 
@@ -166,13 +454,66 @@ public class Ring {
      * @return nodes by a given owner
      */
     public List<Node> getNodes(Owner owner) {
-        List<Node> result = new ArrayList<Node>();
-        for (Node node : nodeList) {
-            if (node.getOwner() == owner) {
-                result.add(node);
+        if (!ParallelScan.isParallel(store.size())) {
+            List<Node> result = new ArrayList<Node>(index.count(owner));
+            for (int i = index.nextNode(owner, 0); i != -1; i = index.nextNode(owner, i + 1)) {
+                result.add(store.getNode(i));
             }
+            return result;
         }
-        return result;
+        /*
+         * On large rings the nodes of every chunk are counted on the bitset first. The chunks then fill their own slices of the array,
+         * which are already in the order of the node numbers.
+         */
+        int n = store.size();
+        int[] offsets = new int[ParallelScan.chunks(n) + 1];
+        for (int chunk = 0; chunk + 1 < offsets.length; chunk++) {
+            int from = chunk * ParallelScan.CHUNK_SIZE;
+            int to = Math.min(from, n - ParallelScan.CHUNK_SIZE) + ParallelScan.CHUNK_SIZE; // from + CHUNK_SIZE could overflow
+            offsets[chunk + 1] = offsets[chunk] + index.count(owner, from, to);
+        }
+        Node[] nodes = new Node[offsets[offsets.length - 1]];
+        ParallelScan.forEachChunk(n, (chunk, from, to) -> {
+            int j = offsets[chunk];
+            for (int i = index.nextNode(owner, from); i != -1 && i < to; i = index.nextNode(owner, i + 1)) {
+                nodes[j++] = store.getNode(i);
+            }
+        });
+        return new ArrayList<Node>(Arrays.asList(nodes));
+    }
+
+    /**
+     * Returns the smallest node number >= a given node number that belongs to an owner. The node is searched on the bitset of the
+     * owner, 64 nodes at a time. The search doesn't wrap around the end of the ring.
+     * 
+     * @param owner the owner
+     * @param nodeNumber the node number where the search starts
+     * @return the node number, or -1 if there is no such node
+     */
+    public int getNextNode(Owner owner, int nodeNumber) {
+        return index.nextNode(owner, Math.max(nodeNumber, 0));
+    }
+
+    /**
+     * Returns the largest node number <= a given node number that belongs to an owner. The search doesn't wrap around the start of
+     * the ring.
+     * 
+     * @param owner the owner
+     * @param nodeNumber the node number where the search starts
+     * @return the node number, or -1 if there is no such node
+     */
+    public int getPreviousNode(Owner owner, int nodeNumber) {
+        return index.previousNode(owner, Math.min(nodeNumber, store.size() - 1));
+    }
+
+    /**
+     * Returns the number of nodes owned by a given owner.
+     * 
+     * @param owner the owner
+     * @return number of nodes by the owner
+     */
+    public int getNodeCount(Owner owner) {
+        return index.count(owner);
     }
 
     /**
@@ -182,11 +523,7 @@ public class Ring {
      * @return total amount of fernies owned by a given owner
      */
     public int getFernies(Owner owner) {
-        int sum = 0;
-        for (Node node : getNodes(owner)) {
-            sum += node.getFernieCount();
-        }
-        return sum;
+        return (int) index.fernies(owner);
     }
 
     /**
@@ -199,14 +536,17 @@ public class Ring {
     }
 
     /**
-     * Returns the node with a given node number.
+     * Returns the node with a given node number. Since the nodes are stored ordered by their node number, the node number is used
+     * directly as index.
      * 
      * @param nodeNumber node number
-     * @return the node with the given node number
+     * @return the node with the given node number, or {@code null} if there is no node with this number
      */
     public Node getNodeByNumber(int nodeNumber) {
-        Node node = filter(x -> x.getNodeNumber() == nodeNumber);
-        return node;
+        if (nodeNumber < 0 || nodeNumber >= store.size()) {
+            return null;
+        }
+        return store.getNode(nodeNumber);
     }
 
     /**
@@ -225,28 +565,12 @@ public class Ring {
      * @throws MoveException if the move on this node is invalid
      */
     public void attack(int nodeNumber, int fernies) throws MoveException {
-        Node node = filter(x -> x.getNodeNumber() == nodeNumber);
-        if (node == null) {
-            throw new MoveException(
-                    "Node does not exist.");
-        }
-        if (node.getOwner() != Owner.THEIRS) {
-            throw new MoveException(
-                    "You are trying to attack a node that does not belong to the opponent. Use the addFernie method instead.");
-            /*
-             * If the node belongs to the opponent and the number of fernies to be placed
-             * minus the number of the opponent's fernies on the node exceeds the maximum
-             * allowed number of fernies per node, only the allowed amount of fernies is
-             * added to the node.
-             */
-        } else if (fernies - node.getFernieCount() > maxFerniesPerNode) {
-            int ferniesNew = maxFerniesPerNode + node.getFernieCount();
-            node.addFernies(ferniesNew);
-            this.availableFernies -= ferniesNew;
-            throw new FernieException(ferniesNew);
-        } else {
-            node.addFernies(fernies);
-            this.availableFernies -= fernies;
+        int result = tryAttack(nodeNumber, fernies);
+        if (result < 0) {
+            throw new MoveException(MoveResult.getMessage(result, nodeNumber));
+        }
+        if (result != fernies) {
+            throw new FernieException(result);
         }
     }
 
@@ -265,27 +589,17 @@ public class Ring {
      * @throws MoveException if the move on this node is invalid
      */
     public void addFernies(int nodeNumber, int fernies) throws MoveException {
-        Node node = filter(x -> x.getNodeNumber() == nodeNumber);
         /*
          * If the number of fernies on the node + the amount of fernies to be placed is more than the maximum allowed number
          * of fernies per node, there will be added only enough fernies to reach the maximum allowed number. This number of
          * actually placed fernies is returned through a FernieException.
          */
-        if (node == null) {
-            throw new MoveException(
-                    "Node does not exist.");
+        int result = tryAddFernies(nodeNumber, fernies);
+        if (result < 0) {
+            throw new MoveException(MoveResult.getMessage(result, nodeNumber));
         }
-        if (node.getOwner() == Owner.THEIRS) {
-            throw new MoveException(
-                    "You are trying to place fernies on an opponent node. Use the attack method instead.");
-        } else if (fernies + node.getFernieCount() > maxFerniesPerNode) {
-            int ferniesNew = maxFerniesPerNode - node.getFernieCount();
-            node.addFernies(ferniesNew);
-            this.availableFernies -= ferniesNew;
-            throw new FernieException(ferniesNew);
-        } else {
-            node.addFernies(fernies);
-            this.availableFernies -= fernies;
+        if (result != fernies) {
+            throw new FernieException(result);
         }
     }
 
@@ -302,73 +616,154 @@ public class Ring {
      * @throws MoveException thrown if an invalid move is performed
      */
     public void removeFernies(int nodeNumber, int fernies) throws MoveException {
-        Node node = filter(x -> x.getNodeNumber() == nodeNumber);
-        if (node != null) {
-            node.removeFernies(fernies);
-            this.availableFernies += fernies;
+        int result = tryRemoveFernies(nodeNumber, fernies);
+        // A node that doesn't exist is ignored.
+        if (result < 0 && result != MoveResult.INVALID_NODE) {
+            throw new MoveException(MoveResult.getMessage(result, nodeNumber));
         }
     }
 
     /**
-     * Returns how much of the ring is visible.
-     * @return visibility ratio of the ring
+     * Attacks an opponent's node like {@link #attack(int, int)}, but reports the result as a number instead of throwing an exception.
+     * If the number of fernies minus the opponent's fernies exceeds the maximum number of fernies allowed per node, the attack is
+     * carried out only with the maximum possible number of fernies.
+     *
+     * @param nodeNumber the number of the node to be attacked
+     * @param fernies    the number of fernies to place on the targeted node
+     * @return the number of fernies actually used, or a negative {@link MoveResult} code if the move is invalid
      */
-    public float getVisibilityPercentage() {
-        return (float) getVisibleNodes().size() / nodeList.length;
+    public int tryAttack(int nodeNumber, int fernies) {
+        if (nodeNumber < 0 || nodeNumber >= store.size()) {
+            return MoveResult.INVALID_NODE;
+        }
+        if (fernies < 0) {
+            return MoveResult.INVALID_AMOUNT;
+        }
+        int count = store.getFernieCount(nodeNumber);
+        if (store.getOwner(nodeNumber) != Owner.THEIRS) {
+            return MoveResult.NOT_OPPONENT;
+        }
+        int applied = fernies - count > maxFerniesPerNode ? maxFerniesPerNode + count : fernies;
+        if (applied <= count) {
+            return MoveResult.TOO_FEW;
+        }
+        // Direct attack mechanic: the opponent's fernies are subtracted from the placed fernies.
+        set(nodeNumber, Owner.THEIRS, applied - count);
+        this.availableFernies -= applied;
+        return applied;
     }
 
+    /**
+     * Places fernies on a node like {@link #addFernies(int, int)}, but reports the result as a number instead of throwing an exception.
+     * If the number of fernies to be placed plus the fernies already present on the node exceeds the maximum number of fernies allowed
+     * per node, only the maximum possible number of fernies is placed on the node.
+     *
+     * @param nodeNumber the number of the node on which fernies should be placed
+     * @param fernies    the number of fernies to place on the node
+     * @return the number of fernies actually placed, or a negative {@link MoveResult} code if the move is invalid
+     */
+    public int tryAddFernies(int nodeNumber, int fernies) {
+        if (nodeNumber < 0 || nodeNumber >= store.size()) {
+            return MoveResult.INVALID_NODE;
+        }
+        if (fernies < 0) {
+            return MoveResult.INVALID_AMOUNT;
+        }
+        Owner owner = store.getOwner(nodeNumber);
+        int count = store.getFernieCount(nodeNumber);
+        if (owner == Owner.THEIRS) {
+            return MoveResult.OPPONENT_NODE;
+        }
+        if (owner == Owner.UNKNOWN) {
+            return MoveResult.INVISIBLE;
+        }
+        int applied = fernies + count > maxFerniesPerNode ? Math.max(maxFerniesPerNode - count, 0) : fernies;
+        if (applied > 0) {
+            set(nodeNumber, Owner.MINE, count + applied); //By placing fernies on an uncontrolled node, the node becomes mine.
+            this.availableFernies -= applied;
+        }
+        return applied;
+    }
 
     /**
-     * Returns whether all nodes owned by a given owner are occupied to maximum fernie capacity.
-     * @param owner the owner
-     * @return {@code true} if all nodes by the owner are fully occupied, {@code false} otherwise
+     * Removes fernies from a node owned by the agent like {@link #removeFernies(int, int)}, but reports the result as a number instead
+     * of throwing an exception. If all fernies are removed, the node becomes uncontrolled.
+     *
+     * @param nodeNumber the number of the node from which fernies should be removed
+     * @param fernies    the number of fernies to remove
+     * @return the number of fernies removed, or a negative {@link MoveResult} code if the move is invalid
      */
-    public boolean isRingFull(Owner owner) {
-        for (Node node : getNodes(owner)) {
-            if (node.getFernieCount() < maxFerniesPerNode) {
-                return false;
-            }
+    public int tryRemoveFernies(int nodeNumber, int fernies) {
+        if (nodeNumber < 0 || nodeNumber >= store.size()) {
+            return MoveResult.INVALID_NODE;
+        }
+        if (fernies < 0) {
+            return MoveResult.INVALID_AMOUNT;
+        }
+        int count = store.getFernieCount(nodeNumber);
+        if (store.getOwner(nodeNumber) != Owner.MINE) {
+            return MoveResult.NOT_MINE;
         }
-        return true;
+        if (count < fernies) {
+            return MoveResult.TOO_MANY_REMOVED;
+        }
+        count -= fernies;
+        set(nodeNumber, count == 0 ? Owner.UNCONTROLLED : Owner.MINE, count);
+        this.availableFernies += fernies;
+        return fernies;
     }
 
     /**
-     * Returns the node that matches a given filter predicate.
-     * @param p the filter predicate
-     * @return the node that matches the criterion
+     * Validates and applies a batch of moves in one pass. Move i places {@code fernies[i]} fernies on node {@code nodes[i]} if the
+     * number is positive (attacking the node if it belongs to the opponent), or removes the fernies if it is negative. An invalid move
+     * doesn't stop the batch, the following moves are still carried out.
+     *
+     * @param nodes   the node numbers
+     * @param fernies the number of fernies per move, negative for removals
+     * @return for every move the number of fernies actually placed or removed, or a negative {@link MoveResult} code
      */
-    private Node filter(Predicate<Node> p) {
-        for (Node node : nodeList) {
-            if (p.test(node)) {
-                return node;
+    public int[] applyMoves(int[] nodes, int[] fernies) {
+        int[] results = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            int nodeNumber = nodes[i];
+            if (fernies[i] < 0) {
+                results[i] = tryRemoveFernies(nodeNumber, -fernies[i]);
+            } else if (nodeNumber >= 0 && nodeNumber < store.size() && store.getOwner(nodeNumber) == Owner.THEIRS) {
+                results[i] = tryAttack(nodeNumber, fernies[i]);
+            } else {
+                results[i] = tryAddFernies(nodeNumber, fernies[i]);
             }
         }
-        return null;
+        return results;
+    }
+
+    /**
+     * Returns how much of the ring is visible.
+     * @return visibility ratio of the ring
+     */
+    public float getVisibilityPercentage() {
+        return (float) (store.size() - index.count(Owner.UNKNOWN)) / store.size();
+    }
+
+
+    /**
+     * Returns whether all nodes owned by a given owner are occupied to maximum fernie capacity.
+     * @param owner the owner
+     * @return {@code true} if all nodes by the owner are fully occupied, {@code false} otherwise
+     */
+    public boolean isRingFull(Owner owner) {
+        return index.isFull(owner);
     }
 
     /**
      * Returns the node with lowest fernie count by a given owner. If there are several nodes with the same lowest
-     * fernie count, a random node is selected.
+     * fernie count, a random node is selected (uniformly, using the random number generator of the ring).
      * @param owner the owner
-     * @return the/a node with the lowest fernie count by the owner
+     * @return the/a node with the lowest fernie count by the owner, or {@code null} if the owner has no nodes
      */
     public Node getMinNode(Owner owner) {
-        Node minimum = getNodes(owner).getFirst();
-        for (Node node : getNodes(owner)) {
-            if (node.getFernieCount() < minimum.getFernieCount()) {
-                minimum = node;
-            }
-        }
-        List<Node> minList = new ArrayList<>();
-        for (Node node : getNodes(owner)) {
-            if (node.getFernieCount() == minimum.getFernieCount()) {
-                minList.add(node);
-            }
-        }
-        if (!minList.isEmpty()) {
-            minimum = minList.get(new Random().nextInt(minList.size()));
-        }
-        return minimum;
+        int nodeNumber = getCountIndex().min(owner, random);
+        return nodeNumber == -1 ? null : store.getNode(nodeNumber);
     }
 
     /**
@@ -391,27 +786,37 @@ public class Ring {
 
     /**
      * Returns the node with highest fernie count by a given owner. If there are several nodes with the same highest
-     * fernie count, a random node is selected.
+     * fernie count, a random node is selected (uniformly, using the random number generator of the ring).
      * @param owner the owner
-     * @return the/a node with the highest fernie count by the owner
+     * @return the/a node with the highest fernie count by the owner, or {@code null} if the owner has no nodes
      */
     public Node getMaxNode(Owner owner) {
-        Node maximum = getNodes(owner).getFirst();
-        for (Node node : getNodes(owner)) {
-            if (node.getFernieCount() > maximum.getFernieCount()) {
-                maximum = node;
-            }
-        }
-        List<Node> maxList = new ArrayList<>();
-        for (Node node : getNodes(owner)) {
-            if (node.getFernieCount() == maximum.getFernieCount()) {
-                maxList.add(node);
-            }
-        }
-        if (!maxList.isEmpty()) {
-            maximum = maxList.get(new Random().nextInt(maxList.size()));
+        int nodeNumber = getCountIndex().max(owner, random);
+        return nodeNumber == -1 ? null : store.getNode(nodeNumber);
+    }
+
+    private CountIndex getCountIndex() {
+        if (counts == null) {
+            counts = new CountIndex(store);
         }
-        return maximum;
+        return counts;
+    }
+
+    /**
+     * Returns the random number generator that is used for all random decisions of the current turn.
+     * @return the random number generator
+     */
+    public SplittableRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * Sets the random number generator that is used for all random decisions of the current turn. A generator with a known seed makes
+     * the turn reproducible.
+     * @param random the random number generator
+     */
+    public void setRandom(SplittableRandom random) {
+        this.random = random;
     }
 
     /**
@@ -444,65 +849,95 @@ public class Ring {
 
     /**
      * Returns a list of nodes owned by the opponent which have a given numbers of free neighbors in both directions.
+     * <p>
+     * Only the first and last node of a segment of opponent nodes can have free neighbors, so the query walks the segments of the
+     * run-length index instead of checking the neighbors of every opponent node.
      * @param forwards required free nodes forwards
      * @param backwards required free nodes backwards
      * @return node list
      */
     public List<Node> getNodesFreeNeighbors(int forwards, int backwards) {
-        List<Node> result = new ArrayList<Node>();
-        List<Node> theirs = getNodes(Owner.THEIRS);
-        for (Node node : theirs) {
-            boolean free = true;
-            //I use modulo in order to avoid over- or underflow when checking the next or previous node.
-            for (int i = 1; i <= forwards; i++) {
-                int next = (node.getNodeNumber() + i) % nodeList.length;
-                if (getNodeByNumber(next).getOwner() != Owner.UNCONTROLLED) {
-                    free = false;
-                }
+        if (forwards <= 0 && backwards <= 0) {
+            return getNodes(Owner.THEIRS);
+        }
+        int[] starts = runs.getStarts();
+        int[] result = new int[starts.length];
+        int found = 0;
+        for (int j = 0; j < starts.length; j++) {
+            if (store.getOwner(starts[j]) != Owner.THEIRS) {
+                continue;
             }
-            for (int j = 1; j <= backwards; j++) {
-                int prev = (node.getNodeNumber() - j + nodeList.length) % nodeList.length;
-                if (getNodeByNumber(prev).getOwner() != Owner.UNCONTROLLED) {
-                    free = false;
-                }
+            int first = starts[j];
+            int last = (starts[(j + 1) % starts.length] - 1 + store.size()) % store.size();
+            /*
+             * If free nodes are required in a direction, only the node at that end of the segment can qualify. If they are required in
+             * both directions, the segment must consist of a single node.
+             */
+            if (forwards > 0 && backwards > 0 && first != last) {
+                continue;
             }
-            if (free) {
-                result.add(node);
+            boolean freeForwards = forwards <= 0 || isFreeRun(starts, (j + 1) % starts.length, forwards);
+            boolean freeBackwards = backwards <= 0 || isFreeRun(starts, (j - 1 + starts.length) % starts.length, backwards);
+            if (freeForwards && freeBackwards) {
+                result[found++] = backwards > 0 ? first : last;
             }
         }
-        return result;
+        return toSortedNodes(result, found);
     }
 
     /**
      * Returns a list of nodes owned by the opponent which have a given number of free neighbors in one direction.
+     * <p>
+     * Like {@link #getNodesFreeNeighbors(int, int)}, the query walks the segments of the run-length index.
      * @param neighbors required free neighbors in one direction
      * @return node list
      */
     public List<Node> getNodesFreeNeighbors(int neighbors) {
-        List<Node> result = new ArrayList<Node>();
-        if (!getNodes(Owner.THEIRS).isEmpty()) {
-            for (Node node : getNodes(Owner.THEIRS)) {
-                boolean freeForwards = true;
-                boolean freeBackwards = true;
-                //I use modulo in order to avoid over- or underflow when checking the next or previous node.
-                for (int i = 1; i <= neighbors; i++) {
-                    int next = (node.getNodeNumber() + i) % nodeList.length;
-                    if (getNodeByNumber(next).getOwner() != Owner.UNCONTROLLED) {
-                        freeForwards = false;
-                    }
+        int[] starts = runs.getStarts();
+        if (neighbors <= 0 || starts.length == 0) {
+            return new ArrayList<Node>();
+        }
+        int[] result = new int[2 * starts.length];
+        int found = 0;
+        for (int j = 0; j < starts.length; j++) {
+            if (store.getOwner(starts[j]) != Owner.THEIRS) {
+                continue;
+            }
+            int first = starts[j];
+            int last = (starts[(j + 1) % starts.length] - 1 + store.size()) % store.size();
+            boolean freeForwards = isFreeRun(starts, (j + 1) % starts.length, neighbors);
+            boolean freeBackwards = isFreeRun(starts, (j - 1 + starts.length) % starts.length, neighbors);
+            //Here I use ^ for xor because I do not want to repeat the nodes that are already covered by the method with the same name but two parameters.
+            if (first == last) {
+                if (freeForwards ^ freeBackwards) {
+                    result[found++] = first;
                 }
-                for (int j = 1; j <= neighbors; j++) {
-                    int prev = (node.getNodeNumber() - j + nodeList.length) % nodeList.length;
-                    if (getNodeByNumber(prev).getOwner() != Owner.UNCONTROLLED) {
-                        freeBackwards = false;
-                    }
+            } else {
+                // Inside a longer segment the neighbor in one direction is always an opponent node.
+                if (freeBackwards) {
+                    result[found++] = first;
                 }
-                //Here I use ^ for xor because I do not want to repeat the nodes that are already covered by the method with the same name but two parameters.
-                if (freeForwards ^ freeBackwards) {
-                    result.add(node);
+                if (freeForwards) {
+                    result[found++] = last;
                 }
             }
         }
+        return toSortedNodes(result, found);
+    }
+
+    // Returns whether the segment with a given index is uncontrolled and has at least a given length.
+    private boolean isFreeRun(int[] starts, int j, int length) {
+        int runLength = (starts[(j + 1) % starts.length] - starts[j] + store.size()) % store.size();
+        return store.getOwner(starts[j]) == Owner.UNCONTROLLED && runLength >= length;
+    }
+
+    // Returns the nodes with the given node numbers, sorted by node number.
+    private List<Node> toSortedNodes(int[] nodeNumbers, int count) {
+        Arrays.sort(nodeNumbers, 0, count);
+        List<Node> result = new ArrayList<Node>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(store.getNode(nodeNumbers[i]));
+        }
         return result;
     }
 
@@ -511,13 +946,7 @@ public class Ring {
      * @return available fernies
      */
     public int calcUnnecessary() {
-        int result = 0;
-        for (Node node : getNodes(Owner.MINE)) {
-            if (node.getFernieCount() > 1) {
-                result += node.getFernieCount() - 1;
-            }
-        }
-        return result;
+        return (int) index.surplus(Owner.MINE);
     }
     
     /**
@@ -526,39 +955,54 @@ public class Ring {
      * @return true if opponent occupies neighboring nodes, else false
      */
      public boolean checkForNeighbors(Node node) {
-         int next = (node.getNodeNumber() + 1) % getNodes().length;
-         int prev = (node.getNodeNumber() - 1 + getNodes().length) % getNodes().length;
-        if (getNodeByNumber(next).getOwner() == Owner.THEIRS ||
-                getNodeByNumber(prev).getOwner() == Owner.THEIRS ) {
-            return true;
-        } else {
-            return false;
+         int next = (node.getNodeNumber() + 1) % store.size();
+         int prev = (node.getNodeNumber() - 1 + store.size()) % store.size();
+        return index.contains(Owner.THEIRS, next) || index.contains(Owner.THEIRS, prev);
+    }
+
+    /**
+     * Returns whether all nodes in a range of consecutive nodes belong to an owner. The range wraps around the end of the ring. The nodes
+     * are counted on the bitset of the owner, 64 nodes at a time.
+     * @param owner the owner
+     * @param from the first node of the range (taken modulo the node count)
+     * @param length the number of nodes in the range (at most the node count)
+     * @return {@code true} if all nodes in the range belong to the owner
+     */
+    public boolean isAllOwned(Owner owner, int from, int length) {
+        int n = store.size();
+        int start = Math.floorMod(from, n);
+        int count = Math.min(Math.max(length, 0), n);
+        int end = start + count;
+        if (end <= n) {
+            return index.count(owner, start, end) == count;
         }
+        return index.count(owner, start, n) + index.count(owner, 0, end - n) == count;
     }
 
      /**
-      * Returns the ring as String in the format of a step file. This method is used to save the ring at the end of a turn in the prediction file.
+      * Returns the ring as String in the format of a step file. The prediction file is written in a binary format, this method is
+      * only used to export the prediction for debugging.
       * 
       * @return ring as String
       */
     @Override
     public String toString() {
-        String string = "";
-        for (Node node : nodeList) {
-            string += node.getFernieCount() + ",";
-        }
-        string += System.lineSeparator();
-        for (Node node: nodeList) {
-            String owner = "";
-            switch (node.getOwner()) {
-            case MINE: owner = "Y"; break;
-            case THEIRS: owner = "T"; break;
-            case UNCONTROLLED: owner = "N"; break;
-            default: owner = "U"; break;
+        StringBuilder string = new StringBuilder(store.size() * 4 + 16);
+        for (int i = 0; i < store.size(); i++) {
+            string.append(store.getFernieCount(i)).append(',');
+        }
+        string.append(System.lineSeparator());
+        for (int i = 0; i < store.size(); i++) {
+            char owner;
+            switch (store.getOwner(i)) {
+            case MINE: owner = 'Y'; break;
+            case THEIRS: owner = 'T'; break;
+            case UNCONTROLLED: owner = 'N'; break;
+            default: owner = 'U'; break;
             }
-            string += owner + ",";
+            string.append(owner).append(',');
         }
-        string += System.lineSeparator() + 1 + System.lineSeparator() + 1;
-        return string;
+        string.append(System.lineSeparator()).append(1).append(System.lineSeparator()).append(1);
+        return string.toString();
     }
 }
@@ -0,0 +1,150 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Read access to the state of a ring. It is implemented by the mutable {@link Ring} that the strategies play on; code that only queries
+ * the ring (like the analysis of the previous round) takes this interface, so it can't change the ring.
+ */
+public interface RingState {
+
+    /**
+     * Returns the number of nodes on the ring.
+     *
+     * @return number of nodes
+     */
+    int getNodeCount();
+
+    /**
+     * Returns the owner of the node with a given node number.
+     *
+     * @param nodeNumber the node number
+     * @return the owner
+     */
+    Owner getOwner(int nodeNumber);
+
+    /**
+     * Returns the fernie count of the node with a given node number.
+     *
+     * @param nodeNumber the node number
+     * @return the fernie count
+     */
+    int getFernieCount(int nodeNumber);
+
+    /**
+     * Returns the maximum number of fernies allowed per node.
+     *
+     * @return maximum number of fernies per node
+     */
+    int getMaxFerniesPerNode();
+
+    /**
+     * Returns the amount of fernies that are currently free to be placed.
+     *
+     * @return available fernies
+     */
+    int getAvailableFernies();
+
+    /**
+     * Returns the node with a given node number.
+     *
+     * @param nodeNumber node number
+     * @return the node with the given node number, or {@code null} if there is no node with this number
+     */
+    Node getNodeByNumber(int nodeNumber);
+
+    /**
+     * Returns a list of nodes by a given owner, sorted by node number.
+     *
+     * @param owner the owner for which the node list should be created
+     * @return nodes by a given owner
+     */
+    List<Node> getNodes(Owner owner);
+
+    /**
+     * Returns the number of nodes owned by a given owner.
+     *
+     * @param owner the owner
+     * @return number of nodes by the owner
+     */
+    int getNodeCount(Owner owner);
+
+    /**
+     * Returns the total amount of fernies owned by a given owner.
+     *
+     * @param owner owner for which the total fernie amount should be returned
+     * @return total amount of fernies owned by a given owner
+     */
+    int getFernies(Owner owner);
+
+    /**
+     * Returns whether the opponent is currently visible.
+     *
+     * @return {@code true} if opponent is visible, {@code false} otherwise
+     */
+    boolean isOpponentVisible();
+
+    /**
+     * Returns how much of the ring is visible.
+     *
+     * @return visibility ratio of the ring
+     */
+    float getVisibilityPercentage();
+
+    /**
+     * Returns the number of fernies that are available if all but one fernie is removed from nodes owned by the agent.
+     *
+     * @return available fernies
+     */
+    int calcUnnecessary();
+
+    /**
+     * Returns the distance (number of steps along the ring in either direction) from a node to the closest node of a given owner.
+     *
+     * @param nodeNumber the node number
+     * @param owner the owner
+     * @return the distance, or {@link Integer#MAX_VALUE} if there is no node of the owner
+     */
+    int getDistance(int nodeNumber, Owner owner);
+
+    /**
+     * Returns the list of nodes that are invisible to the opponent.
+     *
+     * @param visibility the visibility radius
+     * @return nodes that are invisible to the opponent
+     */
+    List<Node> getInvisibleForOpponent(int visibility);
+
+    /**
+     * Returns the list of nodes that belong to the agent and are visible to the opponent.
+     *
+     * @param visibility the visibility radius
+     * @return nodes that are visible to the opponent
+     */
+    List<Node> getVisibleForOpponent(int visibility);
+
+    /**
+     * Returns a list of nodes owned by the opponent which have a given numbers of free neighbors in both directions.
+     *
+     * @param forwards required free nodes forwards
+     * @param backwards required free nodes backwards
+     * @return node list
+     */
+    List<Node> getNodesFreeNeighbors(int forwards, int backwards);
+
+    /**
+     * Returns a list of nodes owned by the opponent which have a given number of free neighbors in exactly one direction.
+     *
+     * @param neighbors required free neighbors in one direction
+     * @return node list
+     */
+    List<Node> getNodesFreeNeighbors(int neighbors);
+
+    /**
+     * Checks whether the nodes on either side of a given node are occupied by the opponent.
+     *
+     * @param node node which should be checked for neighbors
+     * @return true if opponent occupies neighboring nodes, else false
+     */
+    boolean checkForNeighbors(Node node);
+}
@@ -0,0 +1,146 @@
+package model;
+
+/**
+ * Keeps the last values of a statistic that is recorded once per round, e.g. the number of attacks by the opponent, in a ring buffer
+ * of fixed capacity. When the buffer is full, the oldest value is overwritten.
+ * <p>
+ * Besides the values, the window keeps their sum, the sum of their squares and the sum of the values weighted with their position in
+ * the window (0 for the oldest value). All three are updated when a value is added, so the mean, the variance and the trend of the
+ * window are computed in O(1). The sums are kept as longs, so they are exact and don't drift over a long game.
+ */
+public final class RollingWindow {
+    private final int[] values;
+    private int start; // index of the oldest value in the array
+    private int size;
+    private long sum;
+    private long sumOfSquares;
+    private long weightedSum; // sum of position * value, the oldest value having position 0
+
+    /**
+     * Creates an empty window.
+     *
+     * @param capacity the number of values the window keeps
+     */
+    public RollingWindow(int capacity) {
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Adds the value of the current round. If the window is full, the oldest value is removed.
+     *
+     * @param value the value
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            int oldest = values[start];
+            // Removing the oldest value moves all other values one position forward.
+            weightedSum -= sum - oldest;
+            sum -= oldest;
+            sumOfSquares -= (long) oldest * oldest;
+            values[start] = value;
+            start = (start + 1) % values.length;
+            weightedSum += (long) (size - 1) * value;
+        } else {
+            values[(start + size) % values.length] = value;
+            weightedSum += (long) size * value;
+            size++;
+        }
+        sum += value;
+        sumOfSquares += (long) value * value;
+    }
+
+    /**
+     * Returns the number of values the window keeps.
+     *
+     * @return capacity
+     */
+    public int getCapacity() {
+        return values.length;
+    }
+
+    /**
+     * Returns the number of values in the window.
+     *
+     * @return number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a value of the window.
+     *
+     * @param position the position of the value, 0 for the oldest value
+     * @return the value
+     */
+    public int get(int position) {
+        return values[(start + position) % values.length];
+    }
+
+    /**
+     * Returns the value that was added last.
+     *
+     * @return the last value, or 0 if the window is empty
+     */
+    public int getLast() {
+        return size == 0 ? 0 : get(size - 1);
+    }
+
+    /**
+     * Returns the sum of the values.
+     *
+     * @return sum
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the mean of the values.
+     *
+     * @return mean, or 0 if the window is empty
+     */
+    public double getMean() {
+        return size == 0 ? 0 : (double) sum / size;
+    }
+
+    /**
+     * Returns the (population) variance of the values.
+     *
+     * @return variance, or 0 if the window is empty
+     */
+    public double getVariance() {
+        if (size == 0) {
+            return 0;
+        }
+        double mean = getMean();
+        return Math.max((double) sumOfSquares / size - mean * mean, 0);
+    }
+
+    /**
+     * Returns the standard deviation of the values.
+     *
+     * @return standard deviation, or 0 if the window is empty
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Returns the trend of the values, i.e. the slope of the least-squares line through the values over their positions. A positive
+     * trend means that the values have been rising over the last rounds.
+     *
+     * @return change per round, or 0 if the window has less than two values
+     */
+    public double getTrend() {
+        if (size < 2) {
+            return 0;
+        }
+        /*
+         * For the positions 0..n-1 the least-squares slope is (n * sum(k * x) - sum(k) * sum(x)) / (n * sum(k^2) - sum(k)^2), which
+         * simplifies to 12 * (sum(k * x) - (n - 1) / 2 * sum(x)) / (n * (n^2 - 1)).
+         */
+        double n = size;
+        return 12 * (weightedSum - (n - 1) / 2 * sum) / (n * (n * n - 1));
+    }
+}
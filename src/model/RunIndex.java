@@ -0,0 +1,100 @@
+package model;
+
+/**
+ * Keeps a circular run-length index of the ownership of a {@link Ring}, i.e. of the maximal segments of consecutive nodes with the
+ * same {@link Owner}.
+ * <p>
+ * The index is a bitset in which the bit of a node is set if the node starts a new segment (its owner differs from the owner of the
+ * previous node). A change of owner only affects the bits of the node itself and of its successor, so the index is updated in O(1).
+ */
+final class RunIndex {
+    private final NodeStore store;
+    private final long[] starts;
+    private int runCount;
+
+    /**
+     * Builds the index for the nodes of a given store.
+     *
+     * @param store the node store
+     */
+    RunIndex(NodeStore store) {
+        this.store = store;
+        this.starts = new long[(store.size() + 63) >>> 6];
+        if (store instanceof NodeStore.OfArrays arrays) {
+            addAll(arrays.getOwners());
+        } else {
+            for (int i = 0; i < store.size(); i++) {
+                refresh(i);
+            }
+        }
+    }
+
+    /*
+     * Builds the bitset from the array of owners a word at a time, without branches in the inner loop. On large rings the chunks of
+     * words are built in parallel (see ParallelScan).
+     */
+    private void addAll(byte[] owners) {
+        int n = owners.length;
+        ParallelScan.forEachChunk(n, (chunk, chunkFrom, chunkTo) -> {
+            for (int w = chunkFrom >>> 6; w < (chunkTo + 63) >>> 6; w++) {
+                int from = Math.max(w << 6, 1);
+                int to = Math.min((w + 1) << 6, n);
+                long word = 0;
+                for (int i = from; i < to; i++) {
+                    int d = owners[i] - owners[i - 1];
+                    word |= (long) ((d | -d) >>> 31) << i;
+                }
+                starts[w] = word;
+            }
+        });
+        if (owners[0] != owners[n - 1]) {
+            starts[0] |= 1L;
+        }
+        for (long word : starts) {
+            runCount += Long.bitCount(word);
+        }
+    }
+
+    /**
+     * Updates the index after the owner of a node has changed.
+     *
+     * @param nodeNumber the node number
+     */
+    void update(int nodeNumber) {
+        refresh(nodeNumber);
+        refresh((nodeNumber + 1) % store.size());
+    }
+
+    private void refresh(int nodeNumber) {
+        int previous = (nodeNumber - 1 + store.size()) % store.size();
+        long bit = 1L << nodeNumber;
+        boolean isStart = store.getOwner(nodeNumber) != store.getOwner(previous);
+        boolean wasStart = (starts[nodeNumber >>> 6] & bit) != 0;
+        if (isStart && !wasStart) {
+            starts[nodeNumber >>> 6] |= bit;
+            runCount++;
+        } else if (!isStart && wasStart) {
+            starts[nodeNumber >>> 6] &= ~bit;
+            runCount--;
+        }
+    }
+
+    /**
+     * Returns the first node numbers of all segments in ascending order. If all nodes have the same owner, the ring consists of a
+     * single segment without a start, and an empty array is returned. Otherwise there are always at least two segments.
+     *
+     * @return first node numbers of the segments
+     */
+    int[] getStarts() {
+        int[] result = new int[runCount];
+        int j = 0;
+        for (int w = 0; w < starts.length; w++) {
+            long word = starts[w];
+            while (word != 0) {
+                result[j++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package model;
+
+/**
+ * Represents the way in which a {@link Ring} stores its nodes.
+ */
+public enum StorageLayout {
+    /**
+     * Every node is a {@link Node} object (about 36 bytes per node).
+     */
+    OBJECTS,
+    /**
+     * Owners are stored in a byte array and fernie counts in an int array (5 bytes per node). {@link Node} objects are only created
+     * as views when they are requested. Recommended for very large rings.
+     */
+    ARRAYS,
+    /**
+     * Like {@link #ARRAYS}, but the owners and fernie counts are stored outside of the Java heap in direct buffers, or mapped from a
+     * file by {@link Ring#map(java.nio.channels.FileChannel, long, int, int, int)}. Only the indexes of the ring (less than one byte per
+     * node) remain on the heap. Recommended for rings with hundreds of millions of nodes.
+     */
+    OFF_HEAP;
+
+    /**
+     * Returns the layout selected by the system property {@code ringwars.layout} ({@code objects}, {@code arrays} or
+     * {@code off_heap}). If the property
+     * isn't set or invalid, {@link #OBJECTS} is returned.
+     * 
+     * @return the selected layout
+     */
+    public static StorageLayout fromSystemProperty() {
+        String property = System.getProperty("ringwars.layout", "objects");
+        for (StorageLayout layout : values()) {
+            if (layout.name().equalsIgnoreCase(property)) {
+                return layout;
+            }
+        }
+        return OBJECTS;
+    }
+}
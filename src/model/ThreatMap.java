@@ -0,0 +1,226 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a threat score for every node of the ring, which shows where the opponent has attacked in the last rounds.
+ * <p>
+ * Every round the scores decay by the factor {@value #DECAY}, and the nodes that the opponent took or attacked without taking them
+ * (see {@link TurnDiff}) are bumped, together with their two neighbors, which belong to the same front. The decay isn't applied to
+ * every node: the scores are stored multiplied with a scale that grows every round instead, so a round only costs as much as its
+ * events. The scale is divided out of the stored scores again before it gets too large.
+ * <p>
+ * The nodes with a score (the hot set) are kept in a list, so the most threatened nodes are found without scanning the ring. Nodes
+ * whose score has decayed below {@value #MIN_THREAT} are dropped from the hot set.
+ */
+public final class ThreatMap {
+    /** Factor by which the threat scores decay every round. */
+    public static final double DECAY = 0.75;
+    /** Threat score below which a node is no longer threatened. */
+    public static final double MIN_THREAT = 0.01;
+    private static final double LOST_THREAT = 2;
+    private static final double ATTACK_THREAT = 1;
+    private static final double NEIGHBOR_SHARE = 0.5;
+    private static final double MAX_SCALE = 1e20;
+
+    private float[] scores = new float[0]; // threat score * scale, 0 for nodes that are not in the hot set
+    private double scale = 1;
+    private int[] hot = new int[16];
+    private int hotCount;
+
+    /**
+     * Returns the number of nodes of the ring that the scores belong to.
+     *
+     * @return number of nodes
+     */
+    public int getNodeCount() {
+        return scores.length;
+    }
+
+    /**
+     * Removes all scores and sets the number of nodes. Is called when the ring has a different size than before, e.g. in a new game.
+     *
+     * @param nodeCount the number of nodes
+     */
+    public void reset(int nodeCount) {
+        scores = new float[nodeCount];
+        scale = 1;
+        hotCount = 0;
+    }
+
+    /**
+     * Decays all scores by one round and bumps the nodes that the opponent took or attacked in the previous round.
+     *
+     * @param turn the changes of the nodes between the previous and the current round
+     */
+    public void recordTurn(TurnDiff turn) {
+        if (turn.getNodeCount() != scores.length) {
+            reset(turn.getNodeCount());
+        }
+        scale /= DECAY;
+        if (scale > MAX_SCALE) {
+            rescale();
+        }
+        for (int event = 0; event < turn.size(); event++) {
+            TurnDiff.Change change = turn.getChange(event);
+            if (change == TurnDiff.Change.LOST || change == TurnDiff.Change.REPELLED) {
+                double threat = change == TurnDiff.Change.LOST ? LOST_THREAT : ATTACK_THREAT;
+                int nodeNumber = turn.getNodeNumber(event);
+                bump(nodeNumber, threat);
+                bump((nodeNumber + 1) % scores.length, threat * NEIGHBOR_SHARE);
+                bump((nodeNumber - 1 + scores.length) % scores.length, threat * NEIGHBOR_SHARE);
+            }
+        }
+    }
+
+    private void bump(int nodeNumber, double threat) {
+        if (scores[nodeNumber] == 0) {
+            if (hotCount == hot.length) {
+                hot = Arrays.copyOf(hot, hotCount * 2);
+            }
+            hot[hotCount++] = nodeNumber;
+        }
+        scores[nodeNumber] += (float) (threat * scale);
+    }
+
+    // Divides the scale out of the scores of the hot set and drops the nodes whose score has decayed.
+    private void rescale() {
+        int kept = 0;
+        for (int i = 0; i < hotCount; i++) {
+            int nodeNumber = hot[i];
+            scores[nodeNumber] = (float) (scores[nodeNumber] / scale);
+            if (scores[nodeNumber] < MIN_THREAT) {
+                scores[nodeNumber] = 0;
+            } else {
+                hot[kept++] = nodeNumber;
+            }
+        }
+        hotCount = kept;
+        scale = 1;
+    }
+
+    /**
+     * Sets the threat score of a node, e.g. when the scores are restored from the notes file. Scores that aren't positive are ignored.
+     *
+     * @param nodeNumber the node number
+     * @param threat     the threat score
+     */
+    public void setThreat(int nodeNumber, double threat) {
+        if (threat <= 0) {
+            return;
+        }
+        if (scores[nodeNumber] == 0) {
+            bump(nodeNumber, threat);
+        } else {
+            scores[nodeNumber] = (float) (threat * scale);
+        }
+    }
+
+    /**
+     * Returns the threat score of a node.
+     *
+     * @param nodeNumber the node number
+     * @return the threat score, 0 if the node isn't threatened
+     */
+    public double getThreat(int nodeNumber) {
+        return nodeNumber < scores.length ? scores[nodeNumber] / scale : 0;
+    }
+
+    /**
+     * Returns the threatened nodes, i.e. the nodes with a score of at least {@value #MIN_THREAT}, in ascending order. Nodes whose score
+     * has decayed are dropped from the hot set on the way.
+     *
+     * @return node numbers
+     */
+    public int[] getThreatenedNodes() {
+        prune();
+        int[] result = Arrays.copyOf(hot, hotCount);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the most threatened nodes of an owner (usually mine), with the most threatened node first. Only the hot set is scanned,
+     * and the k most threatened nodes are kept in a bounded heap, so the query costs O(h log k) for h threatened nodes.
+     *
+     * @param ring  the ring
+     * @param owner the owner
+     * @param k     the maximum number of nodes
+     * @return node numbers, at most k
+     */
+    public int[] getMostThreatened(RingState ring, Owner owner, int k) {
+        prune();
+        // Min-heap on the scores, so the least threatened of the k nodes found so far is replaced first.
+        int[] heap = new int[Math.min(k, hotCount)];
+        int size = 0;
+        for (int i = 0; i < hotCount; i++) {
+            int nodeNumber = hot[i];
+            if (nodeNumber >= ring.getNodeCount() || ring.getOwner(nodeNumber) != owner) {
+                continue;
+            }
+            if (size < heap.length) {
+                heap[size] = nodeNumber;
+                siftUp(heap, size++);
+            } else if (size > 0 && scores[nodeNumber] > scores[heap[0]]) {
+                heap[0] = nodeNumber;
+                siftDown(heap, size);
+            }
+        }
+        // Removing the minimum repeatedly fills the array from the back, so the most threatened node ends up first.
+        int[] result = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        return result;
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int nodeNumber = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[heap[parent]] <= scores[nodeNumber]) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = nodeNumber;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        int nodeNumber = heap[0];
+        int index = 0;
+        while (2 * index + 1 < size) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && scores[heap[child + 1]] < scores[heap[child]]) {
+                child++;
+            }
+            if (scores[nodeNumber] <= scores[heap[child]]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = nodeNumber;
+    }
+
+    // Drops the nodes whose score has decayed below the minimum from the hot set.
+    private void prune() {
+        float min = (float) (MIN_THREAT * scale);
+        int kept = 0;
+        for (int i = 0; i < hotCount; i++) {
+            int nodeNumber = hot[i];
+            if (scores[nodeNumber] < min) {
+                scores[nodeNumber] = 0;
+            } else {
+                hot[kept++] = nodeNumber;
+            }
+        }
+        hotCount = kept;
+    }
+}
@@ -0,0 +1,249 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Changes of the nodes between the ring as the agent left it in the previous round (the prediction) and the ring in the current round.
+ * <p>
+ * The changes are found in a single pass over both rings, which is merged with the sorted lists of the nodes the agent attacked and
+ * abandoned in the previous round, so no node is looked up twice. They are stored as a stream of events in primitive arrays, sorted by
+ * node number: the node number, the kind of change and the difference of the fernie counts. A node can have several events, e.g. an
+ * opponent node that blocked an attack and was reinforced.
+ */
+public final class TurnDiff {
+
+    /**
+     * Kind of change of a node.
+     */
+    public enum Change {
+        /** A node that wasn't mine (e.g. an attacked opponent node) is now mine. */
+        CAPTURED,
+        /** A node that was mine is no longer mine, although the agent didn't abandon it, i.e. it was taken by the opponent. */
+        LOST,
+        /** An opponent node that the agent attacked is not mine. */
+        BLOCKED,
+        /** A node that the agent abandoned. */
+        ABANDONED,
+        /** An opponent node has more fernies than before. */
+        REINFORCED,
+        /** A node that was invisible is now visible. */
+        REVEALED,
+        /** A node that was visible is now invisible. */
+        HIDDEN,
+        /** A node that is still mine has fewer fernies than before, i.e. the opponent attacked it, but didn't take it. */
+        REPELLED
+    }
+
+    private static final Change[] CHANGES = Change.values();
+
+    private final int nodeCount;
+    private final int[] nodes;
+    private final byte[] changes;
+    private final int[] deltas;
+    private final int[] counts = new int[CHANGES.length];
+
+    private TurnDiff(int nodeCount, int[] nodes, byte[] changes, int[] deltas) {
+        this.nodeCount = nodeCount;
+        this.nodes = nodes;
+        this.changes = changes;
+        this.deltas = deltas;
+        for (byte change : changes) {
+            counts[change]++;
+        }
+    }
+
+    /**
+     * Computes the changes between two rings. If the rings have different sizes, only the nodes that exist on both rings are compared.
+     * The rings are compared chunk by chunk, in parallel on large rings (see {@link ParallelScan}).
+     *
+     * @param previous  the ring as the agent left it in the previous round
+     * @param current   the ring in the current round
+     * @param attacked  the nodes the agent attacked in the previous round
+     * @param abandoned the nodes the agent abandoned in the previous round
+     * @return the changes
+     */
+    public static TurnDiff compute(RingState previous, RingState current, List<Integer> attacked, List<Integer> abandoned) {
+        int n = Math.min(previous.getNodeCount(), current.getNodeCount());
+        int[] attackedNodes = sorted(attacked);
+        int[] abandonedNodes = sorted(abandoned);
+        Chunk[] chunks = new Chunk[ParallelScan.chunks(n)];
+        ParallelScan.forEachChunk(n, (c, from, to) -> {
+            Chunk chunk = new Chunk();
+            int a = lowerBound(attackedNodes, from);
+            int b = lowerBound(abandonedNodes, from);
+            for (int i = from; i < to; i++) {
+                Owner before = previous.getOwner(i);
+                Owner after = current.getOwner(i);
+                boolean wasAttacked = false;
+                while (a < attackedNodes.length && attackedNodes[a] == i) {
+                    wasAttacked = true;
+                    a++;
+                }
+                boolean wasAbandoned = false;
+                while (b < abandonedNodes.length && abandonedNodes[b] == i) {
+                    wasAbandoned = true;
+                    b++;
+                }
+                if (before == after && before != Owner.THEIRS && before != Owner.MINE && !wasAttacked && !wasAbandoned) {
+                    continue; // the common case: nothing that could be an event
+                }
+                if (wasAttacked) {
+                    chunk.add(i, after == Owner.MINE ? Change.CAPTURED : Change.BLOCKED, previous, current);
+                } else if (before != Owner.MINE && after == Owner.MINE) {
+                    chunk.add(i, Change.CAPTURED, previous, current);
+                }
+                if (wasAbandoned) {
+                    chunk.add(i, Change.ABANDONED, previous, current);
+                } else if (before == Owner.MINE && after != Owner.MINE) {
+                    chunk.add(i, Change.LOST, previous, current);
+                }
+                if (before == Owner.THEIRS && after == Owner.THEIRS && current.getFernieCount(i) > previous.getFernieCount(i)) {
+                    chunk.add(i, Change.REINFORCED, previous, current);
+                } else if (before == Owner.MINE && after == Owner.MINE && current.getFernieCount(i) < previous.getFernieCount(i)) {
+                    chunk.add(i, Change.REPELLED, previous, current);
+                }
+                if (before == Owner.UNKNOWN && after != Owner.UNKNOWN) {
+                    chunk.add(i, Change.REVEALED, previous, current);
+                } else if (before != Owner.UNKNOWN && after == Owner.UNKNOWN) {
+                    chunk.add(i, Change.HIDDEN, previous, current);
+                }
+            }
+            chunks[c] = chunk;
+        });
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.size;
+        }
+        int[] nodes = new int[total];
+        byte[] changes = new byte[total];
+        int[] deltas = new int[total];
+        int k = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.nodes, 0, nodes, k, chunk.size);
+            System.arraycopy(chunk.changes, 0, changes, k, chunk.size);
+            System.arraycopy(chunk.deltas, 0, deltas, k, chunk.size);
+            k += chunk.size;
+        }
+        return new TurnDiff(n, nodes, changes, deltas);
+    }
+
+    private static int[] sorted(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    // Returns the index of the first element >= a given value in a sorted array.
+    private static int lowerBound(int[] sorted, int value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of nodes that were compared, i.e. the node count of the smaller of the two rings.
+     *
+     * @return number of nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of events.
+     *
+     * @return number of events
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Returns the node number of an event.
+     *
+     * @param event the index of the event
+     * @return the node number
+     */
+    public int getNodeNumber(int event) {
+        return nodes[event];
+    }
+
+    /**
+     * Returns the kind of change of an event.
+     *
+     * @param event the index of the event
+     * @return the kind of change
+     */
+    public Change getChange(int event) {
+        return CHANGES[changes[event]];
+    }
+
+    /**
+     * Returns the fernie count of the node in the current round minus the fernie count in the previous round.
+     *
+     * @param event the index of the event
+     * @return the difference of the fernie counts
+     */
+    public int getFernieDelta(int event) {
+        return deltas[event];
+    }
+
+    /**
+     * Returns the number of events of a kind.
+     *
+     * @param change the kind of change
+     * @return number of events
+     */
+    public int count(Change change) {
+        return counts[change.ordinal()];
+    }
+
+    /**
+     * Returns the node numbers of the events of a kind in ascending order.
+     *
+     * @param change the kind of change
+     * @return node numbers
+     */
+    public int[] getNodes(Change change) {
+        int[] result = new int[count(change)];
+        int j = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (changes[i] == change.ordinal()) {
+                result[j++] = nodes[i];
+            }
+        }
+        return result;
+    }
+
+    // Events found in one chunk of the rings.
+    private static class Chunk {
+        private int[] nodes = new int[16];
+        private byte[] changes = new byte[16];
+        private int[] deltas = new int[16];
+        private int size;
+
+        private void add(int nodeNumber, Change change, RingState previous, RingState current) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                changes = Arrays.copyOf(changes, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+            }
+            nodes[size] = nodeNumber;
+            changes[size] = (byte) change.ordinal();
+            deltas[size] = current.getFernieCount(nodeNumber) - previous.getFernieCount(nodeNumber);
+            size++;
+        }
+    }
+}
@@ -15,9 +15,21 @@ public class Analyzer {
      * @return selected strategy
      */
     public static Strategy getStrategy(Ring thisRound, Notes notes) {
-        // Analyze the results of the previous round.
-        if (Notes.getCurrentRound() != 1) {
-            analyze(thisRound, notes);
+        return getStrategy(thisRound, notes, null);
+    }
+
+    /**
+     * Returns a strategy based on the state of the ring this round, and the knowledge the agent gathered from previous rounds. The
+     * ring from the previous round is passed directly, e.g. by the {@link Daemon} which still holds it in memory.
+     * @param thisRound ring in the current round
+     * @param notes the notes
+     * @param previousRound the ring as the agent left it in the previous round, or {@code null} if it should be read from the prediction file
+     * @return selected strategy
+     */
+    public static Strategy getStrategy(Ring thisRound, Notes notes, RingState previousRound) {
+        // Analyze the results of the previous round. If the step file was invalid, there is nothing to compare.
+        if (Notes.getCurrentRound() != 1 && thisRound != null) {
+            analyze(thisRound, notes, previousRound == null ? getPreviousRound() : previousRound);
         }
         /*
          * Simple reflex agent
@@ -33,13 +45,18 @@ public class Analyzer {
         }
         //If opponent is weak (less than 5 nodes) and my agent has enough fernies to attack the strongest node, attack.
         int available = thisRound.getAvailableFernies() + thisRound.calcUnnecessary();
-        if (thisRound.getNodes(Owner.THEIRS).size() < 5 && thisRound.getNodes(Owner.THEIRS).size() > 0
+        if (thisRound.getNodeCount(Owner.THEIRS) < 5 && thisRound.getNodeCount(Owner.THEIRS) > 0
                 && available > thisRound.getMaxNode(Owner.THEIRS).getFernieCount() * notes.getAttackBuffer() * 1.1) {
             //The additional 1.1 are explained in the PDF doku. Briefly, the results against Agent2 were better if an additional 1.1 was added.
             return new AttackMax(notes);
         }
-        //If the opponent is more than 1.5 time as strong (number of fernies) as my agent, play defensively.
-        if (thisRound.getFernies(Owner.THEIRS) > thisRound.getFernies(Owner.MINE) * 1.5) {
+        /*
+         * If the opponent is more than 1.5 time as strong (number of fernies) as my agent, play defensively. The opponent's strength
+         * includes the estimated fernies on its nodes behind the fog of war (see BeliefMap).
+         */
+        long opponentFernies = thisRound.getFernies(Owner.THEIRS)
+                + notes.getBeliefs().getEstimatedFernies(Owner.THEIRS, thisRound, Notes.getCurrentRound());
+        if (opponentFernies > thisRound.getFernies(Owner.MINE) * 1.5) {
             return new Defensive(notes);
         }
         /*
@@ -62,7 +79,7 @@ public class Analyzer {
     private static Ring getPreviousRound() {
         Ring ringPrediction;
         try {
-            ringPrediction = Util.readStatusFile("prediction");
+            ringPrediction = Util.readPrediction();
         } catch (InvalidStatusException e) {
             return null;
         }
@@ -72,10 +89,11 @@ public class Analyzer {
     /**
      * Analyzes the notes and writes back updated information.
      * 
+     * @param thisRound ring in the current round
      * @param notes notes
+     * @param previousRound ring as the agent left it in the previous round
      */
-    private static void analyze(Ring thisRound, Notes notes) {
-        Ring previousRound = getPreviousRound();
+    private static void analyze(Ring thisRound, Notes notes, RingState previousRound) {
         //If the prediction file could not be read correctly, the method returns immediately.
         if (previousRound == null) {
             return;
@@ -88,36 +106,29 @@ public class Analyzer {
             notes.setRatiosThisRound(0, 0, 0, 1, 0);
             notes.setAnalysed();
         }
+        /*
+         * All changes of the nodes since the previous round are found in one pass over both rings (see TurnDiff).
+         */
+        TurnDiff turn = TurnDiff.compute(previousRound, thisRound, notes.getMyAttacks(), notes.getAbandoned());
         // Opponent's attacks
-        // The agent checks for all nodes that were mine at the end of the previous round and that were not marked as abandoned
-        //whether they were still mine in this round. If not, an opponent attack was successful.
-        int lastRoundAttacksByOpponent = 0;
-        for (Node nodeP : previousRound.getNodes(Owner.MINE)) {
-            Node nodeT = thisRound.getNodeByNumber(nodeP.getNodeNumber());
-            if (nodeT.getOwner() != Owner.MINE && !notes.getAbandoned().contains(nodeT.getNodeNumber())) {
-                lastRoundAttacksByOpponent++;
-            }
-        }
-        notes.setLastRoundAttacksByOpponent(lastRoundAttacksByOpponent);
-        int totalAttacksOpponent = lastRoundAttacksByOpponent + notes.getTotalAttacksByOpponent();
-        notes.setTotalAttacksByOpponent(totalAttacksOpponent);
+        // All nodes that were mine at the end of the previous round, that were not marked as abandoned and that are no longer mine in this
+        // round were lost due to successful opponent attacks.
+        notes.recordTurn(turn);
+        // The nodes that went dark or became visible again update what the agent believes is behind the fog of war.
+        notes.getBeliefs().recordTurn(turn, previousRound, thisRound, Notes.getCurrentRound());
         /*
          * My attacks 
-         * I will check whether an attacked node has become mine. If not, it
-         * increments the counter of blocked attacks. This will be important for
+         * Every attacked node that hasn't become mine was a blocked attack. This will be important for
          * determining a possible defensive strategy by the opponent and the attack
          * buffer for the current round.
          */
-        int blockedAttacksAbs = 0;
-        for (Integer nodeNumber : notes.getMyAttacks()) {
-            if (thisRound.getNodeByNumber(nodeNumber.intValue()).getOwner() != Owner.MINE) {
-                blockedAttacksAbs++;
-            }
-        }
+        int blockedAttacksAbs = turn.count(TurnDiff.Change.BLOCKED);
         //To differentiate between "I have not attacked" and "No attacks were blocked" I use -1 for the first case and 0 for the second.
         int blockedAttacksLastRoundRel = -1;
         if (!notes.getMyAttacks().isEmpty() ) {
-            blockedAttacksLastRoundRel = blockedAttacksAbs / notes.getMyAttacks().size();
+            // TurnDiff reports a node that I attacked several times only once, so the attacks are counted by node as well.
+            int attackedNodes = (int) notes.getMyAttacks().stream().distinct().count();
+            blockedAttacksLastRoundRel = blockedAttacksAbs / attackedNodes;
         }
         notes.setBlockedAttacksLastRound(blockedAttacksLastRoundRel);
 
@@ -141,16 +152,19 @@ public class Analyzer {
          *  If the opponent attacks less than 1/8 of my nodes, their aggressiveness is rated the lowest level. If they attack between 1/8 and 1/3
          *  they are rated on the middle level. If they attack more than 1/3, they are rated the highest aggressiveness level. Additionally my agent
          *  adapts the ratio for the MixedStrategy.
+         *  The number of attacks is the mean of the last rounds (including the attacks that I repelled), so that a single quiet or busy
+         *  round doesn't change the rating.
          */
-        if (lastRoundAttacksByOpponent > 0 && lastRoundAttacksByOpponent <=previousRound.getNodes(Owner.MINE).size()  /8) {
+        double attacksByOpponent = notes.getOpponentAttacks().getMean();
+        if (attacksByOpponent > 0 && attacksByOpponent <=previousRound.getNodeCount(Owner.MINE)  /8) {
             switch (notes.getAggressiveness()) {
             case UNKNOWN:  notes.increaseRatioBy(1, 0.05); break;
             default: ;
             }
                 notes.setAggressiveness(StrategyOpponent.AGRESSIVE_1);
             
-        } else if (lastRoundAttacksByOpponent > previousRound.getNodes(Owner.MINE).size() /8  
-                && lastRoundAttacksByOpponent < previousRound.getNodes(Owner.MINE).size() /3) {
+        } else if (attacksByOpponent > previousRound.getNodeCount(Owner.MINE) /8  
+                && attacksByOpponent < previousRound.getNodeCount(Owner.MINE) /3) {
             switch (notes.getAggressiveness()) {
             case UNKNOWN:  notes.increaseRatioBy(1, 0.1); break;
             case AGRESSIVE_1: notes.increaseRatioBy(1, 0.05); break;
@@ -171,8 +185,10 @@ public class Analyzer {
      * If the opponent blocks > 5% more attacks than on
      * average, the opponent's defensiveness is incremented. If the opponent blocks
      * >5% less attacks than on average, the opponent's defensiveness is decreased. Additionally the agent adapts the attack buffer accordingly.
+     * The defensiveness is only changed if the number of blocked attacks of the last rounds doesn't trend the other way.
      */
-    if(blockedAttacksLastRoundRel>notes.getBlockedAttacksTotal()*1.05)
+    double blockedTrend = notes.getBlockedAttacks().getTrend();
+    if(blockedAttacksLastRoundRel>notes.getBlockedAttacksTotal()*1.05 && blockedTrend >= 0)
 
     {
         if (notes.getDefensiveness() == StrategyOpponent.UNKNOWN) {
@@ -181,7 +197,7 @@ public class Analyzer {
             notes.incrementStrategy(notes.getDefensiveness());
             notes.setAttackBuffer(notes.getAttackBuffer() + 0.1);
         }
-    }else if(blockedAttacksLastRoundRel<notes.getBlockedAttacksTotal()*0.95)
+    }else if(blockedAttacksLastRoundRel<notes.getBlockedAttacksTotal()*0.95 && blockedTrend <= 0)
     {
         if (notes.getDefensiveness() == StrategyOpponent.UNKNOWN) {
             notes.setDefensiveness(StrategyOpponent.DEFENSIVE_1);
@@ -69,17 +69,11 @@ public abstract class Attack extends Strategy {
                 && ferniesForThisStrategy > selected.getFernieCount() * notes.getAttackBuffer() +1) {
             selected = selectNode(ring, theirs);
             int ferniesAttack = (int) (selected.getFernieCount() * notes.getAttackBuffer() +1);
-            try {
-                ring.attack(selected.getNodeNumber(), ferniesAttack);
-                ferniesForThisStrategy -= ferniesAttack;
-                output.upsert(selected.getNodeNumber(), ferniesAttack);
+            int used = attack(ring, output, selected.getNodeNumber(), ferniesAttack);
+            if (used >= 0) {
+                ferniesForThisStrategy -= used;
                 notes.addAttack(selected.getNodeNumber());
-            } catch (FernieException e) {
-                output.upsert(selected.getNodeNumber(), e.getFernies());
-                notes.addAttack(selected.getNodeNumber());
-            } catch (MoveException e) {
-                System.out.println("Node number  " + selected.getNodeNumber() + ": " + e.getMessage());
-                e.printStackTrace();
+            } else {
                 theirs.remove(selected); //To avoid infinity loops
             }
         }
@@ -103,19 +97,13 @@ public abstract class Attack extends Strategy {
                 && ferniesForThisStrategy > selected.getFernieCount() * notes.getAttackBuffer() *1.1) {
             selected = selectNode(ring, listFree4);
             int ferniesAttack = (int) (selected.getFernieCount() * notes.getAttackBuffer() *1.1);
-            try {
-                ring.addFernies((selected.getNodeNumber() + 1) % ring.getNodeCount(), ferniesAttack / 2);
-                ring.addFernies((selected.getNodeNumber() - 1 + ring.getNodeCount()) % ring.getNodeCount(), ferniesAttack / 2);
-                ferniesForThisStrategy -= ferniesAttack;
-                output.upsert((selected.getNodeNumber() + 1) % ring.getNodeCount(), ferniesAttack / 2);
-                output.upsert((selected.getNodeNumber() - 1 + ring.getNodeCount()) % ring.getNodeCount(), ferniesAttack / 2);
+            int forwards = addFernies(ring, output, (selected.getNodeNumber() + 1) % ring.getNodeCount(), ferniesAttack / 2);
+            int backwards = addFernies(ring, output, (selected.getNodeNumber() - 1 + ring.getNodeCount()) % ring.getNodeCount(), ferniesAttack / 2);
+            ferniesForThisStrategy -= Math.max(forwards, 0) + Math.max(backwards, 0);
+            if (forwards >= 0 && backwards >= 0) {
                 notes.addAttack(selected.getNodeNumber());
-            } catch (MoveException e) {
-                System.out.println("Node Number " + selected.getNodeNumber() + ": " + e.getMessage());
-                e.printStackTrace();
-            } finally {
-                listFree4.remove(selected); //To avoid infinity loops
             }
+            listFree4.remove(selected); //To avoid infinity loops
         }
         /*
          * Secondly, attempts are made to perform edge attacks, as this is the
@@ -128,31 +116,15 @@ public abstract class Attack extends Strategy {
                 && ferniesForThisStrategy > ring.getMinNode(listFree2).getFernieCount() * notes.getAttackBuffer() *1.1) { //Additional 1.1 is explained in PDF file.
             selected = selectNode(ring, listFree2);
             int ferniesAngriff = (int) (selected.getFernieCount() * notes.getAttackBuffer() *1.1);
-            try {
-                boolean freeFowards = ring.getNodeByNumber((selected.getNodeNumber() + 1) % ring.getNodeCount())
-                        .getOwner() == Owner.UNCONTROLLED
-                        && ring.getNodeByNumber((selected.getNodeNumber() + 1) % ring.getNodeCount()).getOwner() == Owner.UNCONTROLLED;
-                if (freeFowards) {
-                    ring.addFernies((selected.getNodeNumber() + 1) % ring.getNodeCount(), ferniesAngriff);
-                    ferniesForThisStrategy -= ferniesAngriff;
-                    output.upsert((selected.getNodeNumber() + 1) % ring.getNodeCount(), ferniesAngriff);
-                    notes.addAttack(selected.getNodeNumber());
-                } else {
-                    ring.addFernies((selected.getNodeNumber() - 1 + ring.getNodeCount()) % ring.getNodeCount(), ferniesAngriff);
-                    ferniesForThisStrategy -= ferniesAngriff;
-                    output.upsert((selected.getNodeNumber() - 1 + ring.getNodeCount()) % ring.getNodeCount(), ferniesAngriff);
-                    notes.addAttack(selected.getNodeNumber());
-                }
-            } catch (FernieException e) {
-                output.upsert(selected.getNodeNumber(), e.getFernies());
-                ferniesForThisStrategy -= e.getFernies();
+            boolean freeFowards = ring.isAllOwned(Owner.UNCONTROLLED, selected.getNodeNumber() + 1, 2);
+            int target = freeFowards ? (selected.getNodeNumber() + 1) % ring.getNodeCount()
+                    : (selected.getNodeNumber() - 1 + ring.getNodeCount()) % ring.getNodeCount();
+            int placed = addFernies(ring, output, target, ferniesAngriff);
+            if (placed >= 0) {
+                ferniesForThisStrategy -= placed;
                 notes.addAttack(selected.getNodeNumber());
-            } catch (MoveException e) {
-                System.out.println("Node number " + selected.getNodeNumber() + ": " + e.getMessage());
-                e.printStackTrace();
-            } finally {
-                listFree2.remove(selected); //To avoid infinity loops
             }
+            listFree2.remove(selected); //To avoid infinity loops
         }
     }
 
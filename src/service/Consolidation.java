@@ -43,6 +43,11 @@ public class Consolidation extends Strategy {
             return output;
         }
         ferniesForThisStrategy = (int) (ring.getAvailableFernies() * ratio);
+        /*
+         * Half of the fernies go to the nodes that the opponent has attacked most in the last rounds, since the next attack is most
+         * likely to come there.
+         */
+        ferniesForThisStrategy -= reinforceThreatened(ring, output, ferniesForThisStrategy / 2);
         List<Node> visibleForOpponent = ring.getVisibleForOpponent(notes.getVisibility());
         /*
          * The agent places all available fernies evenly on the nodes that are visible to the opponent.
@@ -53,16 +58,10 @@ public class Consolidation extends Strategy {
             int ferniesPerNode = ferniesForThisStrategy / (visibleForOpponent.size());
             while (ferniesForThisStrategy > 0 && iterator.hasNext()) {
                 node = iterator.next();
-                try {
-                    ring.addFernies(node.getNodeNumber(), ferniesPerNode);
-                    ferniesForThisStrategy -= ferniesPerNode;
-                    output.upsert(node.getNodeNumber(), ferniesPerNode);
-                }  catch (FernieException e) {
-                    ferniesForThisStrategy -= e.getFernies();
-                    output.upsert(node.getNodeNumber(), e.getFernies());
-                } catch (MoveException e) {
-                    System.out.println("Node number " + node.getNodeNumber() + ": " + e.getMessage());
-                } 
+                int placed = addFernies(ring, output, node.getNodeNumber(), ferniesPerNode);
+                if (placed > 0) {
+                    ferniesForThisStrategy -= placed;
+                }
             }
         }
         return output;
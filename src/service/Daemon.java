@@ -0,0 +1,196 @@
+package service;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import model.*;
+
+/**
+ * Keeps the agent resident for the whole game instead of starting a new JVM every turn.
+ * <p>
+ * The daemon watches the agent's directory for the step file of the next round and plays the turn as soon as it appears. The ring
+ * as the agent left it and the notes are kept in memory between rounds, so the prediction and notes files are only written for
+ * durability (e.g. if the daemon is restarted) and are not read again.
+ * <p>
+ * The daemon terminates if no new step file appears within the time given by the system property {@code ringwars.daemonTimeout}
+ * (in seconds, default 300). A turn that fails (e.g. because of an invalid step file) ends with an empty move file, and the daemon
+ * waits for the next round.
+ */
+public class Daemon {
+    /*
+     * The game engine might still be writing the step file when the first event arrives. If the file is invalid, the daemon waits this
+     * long for another modification before the file is accepted as invalid.
+     */
+    private static final long SETTLE_MILLIS = 500;
+    // Interval in which the size of a new step file is checked until it doesn't change anymore.
+    private static final long STABLE_MILLIS = 20;
+
+    /**
+     * Plays all rounds of the game starting with a given round.
+     * @param firstRound the first round to be played
+     * @param agentName the agent name (directory)
+     */
+    public static void run(int firstRound, String agentName) {
+        Path directory = Paths.get(agentName);
+        long timeout = TimeUnit.SECONDS.toMillis(Long.getLong("ringwars.daemonTimeout", 300));
+        int round = firstRound;
+        Notes notes = null;
+        Ring previousRound = null;
+        // The journal stays open for the whole game, so its state is only restored once.
+        GameJournal journal = GameJournal.openForAgent(agentName);
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+            while (true) {
+                int nextRound = round;
+                round = awaitStepFile(watcher, directory, round, timeout);
+                if (round < 0) {
+                    System.out.println("No new step file appeared. The daemon terminates now.");
+                    return;
+                }
+                if (round != nextRound) {
+                    // Rounds were skipped, so the ring in memory isn't the previous round. Like a new JVM, the turn reads the
+                    // prediction file.
+                    previousRound = null;
+                }
+                Ring ring = readStep(watcher, agentName, round);
+                try {
+                    if (notes == null) {
+                        notes = Util.readNotes(agentName, ring, round);
+                    } else {
+                        Notes.setCurrentRound(round);
+                    }
+                    RINGwars_8878390_Koebke_Vanessa.playTurn(agentName, ring, notes, previousRound, journal);
+                    previousRound = ring;
+                } catch (RuntimeException e) {
+                    // One failed turn must not end the game: the move of this round is empty, and the next round reads the
+                    // prediction file.
+                    System.out.println("The turn of round " + round + " failed (see StackTrace). An empty move file will be created.");
+                    e.printStackTrace();
+                    Util.writeMove(null, agentName);
+                    previousRound = null;
+                }
+                round++;
+            }
+        } catch (IOException e) {
+            System.out.println("The agent directory could not be watched (see StackTrace). The daemon terminates now.");
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            RINGwars_8878390_Koebke_Vanessa.closeJournal(journal);
+        }
+    }
+
+    /**
+     * Waits until the step file of a given round (or of a later round, if rounds were skipped) exists.
+     * @param watcher the watch service registered on the agent directory
+     * @param directory the agent directory
+     * @param round the next round
+     * @param timeout the maximum waiting time in milliseconds
+     * @return the round whose step file exists, or -1 if the timeout expired
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    private static int awaitStepFile(WatchService watcher, Path directory, int round, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            // The directory is checked before every wait, so a file created before the watcher was registered isn't missed.
+            if (Files.exists(directory.resolve(round + ".txt"))) {
+                return latestRound(directory, round);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return -1;
+            }
+            WatchKey key = watcher.poll(remaining, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                key.pollEvents();
+                key.reset();
+            }
+        }
+    }
+
+    // Returns the highest round >= round whose step file exists, so that the daemon catches up if it missed rounds.
+    private static int latestRound(Path directory, int round) {
+        while (Files.exists(directory.resolve((round + 1) + ".txt"))) {
+            round++;
+        }
+        return round;
+    }
+
+    /**
+     * Reads the step file of a given round as soon as its size doesn't change anymore. If the file is invalid, the daemon waits
+     * shortly for further modifications in case the game engine hasn't finished writing it yet.
+     * @param watcher the watch service registered on the agent directory
+     * @param agentName the agent name
+     * @param round the round
+     * @return the ring, or {@code null} if the step file is invalid
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    private static Ring readStep(WatchService watcher, String agentName, int round) throws InterruptedException {
+        String fileName = round + ".txt";
+        awaitStableSize(Paths.get(agentName, fileName));
+        while (true) {
+            try {
+                return Util.readStatusFile(agentName, String.valueOf(round));
+            } catch (InvalidStatusException e) {
+                if (!awaitModification(watcher, fileName)) {
+                    System.out.println(e.getMessage());
+                    System.out.println("An empty move file will be created.");
+                    return null;
+                }
+            }
+        }
+    }
+
+    /*
+     * Waits until the size of a file doesn't change anymore. The step file exists as soon as the game engine starts writing it, and a
+     * file that was cut off can still be valid (e.g. if the last line was cut from "100" to "10").
+     */
+    private static void awaitStableSize(Path file) throws InterruptedException {
+        long size = size(file);
+        while (true) {
+            Thread.sleep(STABLE_MILLIS);
+            long newSize = size(file);
+            if (newSize == size) {
+                return;
+            }
+            size = newSize;
+        }
+    }
+
+    // Returns the size of a file, or -1 if it can't be determined.
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    // Waits for a modification of a given file. Returns false if the file wasn't modified within SETTLE_MILLIS.
+    private static boolean awaitModification(WatchService watcher, String fileName) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + SETTLE_MILLIS;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            WatchKey key = watcher.poll(remaining, TimeUnit.MILLISECONDS);
+            if (key == null) {
+                return false;
+            }
+            boolean modified = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.context() != null && event.context().toString().equals(fileName)) {
+                    modified = true;
+                }
+            }
+            key.reset();
+            if (modified) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,7 +1,6 @@
 package service;
 
 import java.util.List;
-import java.util.Random;
 
 import model.*;
 
@@ -53,34 +52,19 @@ public class Defensive extends Strategy {
         if (!invisible.isEmpty()) {
             int ferniesPerNode = ferniesForThisStrategy / invisible.size();
             for (Node node : invisible) {
-                try {
-                    ring.addFernies(node.getNodeNumber(), ferniesPerNode);
-                    output.upsert(node.getNodeNumber(), ferniesPerNode);
-                } catch (FernieException e) {
-                    output.upsert(node.getNodeNumber(), e.getFernies());
-                } catch (MoveException e) {
-                    System.out.println("Node number " + node.getNodeNumber() + ": " + e.getMessage());
-                    e.printStackTrace();
-                    invisible.remove(node);
-                }
+                addFernies(ring, output, node.getNodeNumber(), ferniesPerNode);
             }
         } else {
             /*
-             * If all nodes on the ring are visible to the opponent, the agents selects a random uncontrolled node,
-             * and places all fernies on this node.
+             * If all nodes on the ring are visible to the opponent, the agent first reinforces the nodes that the opponent has
+             * attacked most in the last rounds with half of the fernies (if it still holds any of them). Then it selects a random
+             * uncontrolled node, and places the remaining fernies on this node.
              */
+            ferniesForThisStrategy -= reinforceThreatened(ring, output, ferniesForThisStrategy / 2);
             List<Node> list = ring.getNodes(Owner.UNCONTROLLED);
             if (!list.isEmpty()) {
-                Node node = list.get(new Random().nextInt(list.size()));
-                try {
-                    ring.addFernies(node.getNodeNumber(), ferniesForThisStrategy);
-                    output.upsert(node.getNodeNumber(), ferniesForThisStrategy);
-                } catch (FernieException e) {
-                    output.upsert(node.getNodeNumber(), e.getFernies());
-                } catch (MoveException e) {
-                    System.out.println("Node number " + node.getNodeNumber() + ": " + e.getMessage());
-                    e.printStackTrace();
-                }
+                Node node = list.get(ring.getRandom().nextInt(list.size()));
+                addFernies(ring, output, node.getNodeNumber(), ferniesForThisStrategy);
             }
         } 
         return output;
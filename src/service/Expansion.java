@@ -49,35 +49,20 @@ public class Expansion extends Strategy {
         int numberFreeNodes = freeNodes.size();
         /*
          * If there are more uncontrolled nodes than available fernies, the nodes closest
-         * to the starting node should be filled first. To do this, fernies are added
-         * alternately to the first and last node. Afterwards, the first or last node is
-         * removed from the list. By using a modulo 2, fernies are added alternately
-         * to the left and right of the starting node.
+         * to the agent's nodes should be filled first. To do this, the free nodes are
+         * ordered by their distance to the closest node of the agent, which is read from
+         * the cached distance transform of the ring.
          */
 
         if (ferniesForThisStrategy < numberFreeNodes) {
-            int i = 0;
-            while (ferniesForThisStrategy> 0 && !freeNodes.isEmpty()) {
-                try {
-                    if (i % 2 == 0) {
-                        node = freeNodes.getFirst();
-                        freeNodes.removeFirst();
-                    } else {
-                        node = freeNodes.getLast();
-                        freeNodes.removeLast();
-                    }
-                    if (!ring.checkForNeighbors(node)) {
-                        ring.addFernies(node.getNodeNumber(), 1);
-                        ferniesForThisStrategy -= 1;
-                        output.upsert(node.getNodeNumber(), 1);
+            List<Node> closest = byCloseness(ring, freeNodes);
+            for (int i = 0; ferniesForThisStrategy > 0 && i < numberFreeNodes; i++) {
+                node = closest.get(i);
+                if (!ring.checkForNeighbors(node)) {
+                    int placed = addFernies(ring, output, node.getNodeNumber(), 1);
+                    if (placed > 0) {
+                        ferniesForThisStrategy -= placed;
                     }
-                }  catch (FernieException e) {
-                    output.upsert(node.getNodeNumber(), e.getFernies());
-                    ferniesForThisStrategy -= e.getFernies();
-                } catch (MoveException e) {
-                    System.out.println("Node number " + node.getNodeNumber() + ": " + e.getMessage());
-                } finally {
-                    i++;
                 }
             }
         } else if (numberFreeNodes > 0) {
@@ -90,23 +75,40 @@ public class Expansion extends Strategy {
             while (ferniesForThisStrategy > 0 && iterator.hasNext()) {
                 node = iterator.next();
                 if (!ring.checkForNeighbors(node)) {
-                    try {
-                        ring.addFernies(node.getNodeNumber(), ferniesPerNode);
-                        ferniesForThisStrategy -= ferniesPerNode;
-                        output.upsert(node.getNodeNumber(), ferniesPerNode);
-                    } catch (FernieException e) {
-                        ferniesForThisStrategy -= ferniesPerNode;
-                        output.upsert(node.getNodeNumber(), e.getFernies());
-                    } catch (MoveException e) {
-                        System.out.println("Node number " + node.getNodeNumber() + ": " + e.getMessage());
-                    } 
-                } 
+                    int placed = addFernies(ring, output, node.getNodeNumber(), ferniesPerNode);
+                    if (placed > 0) {
+                        ferniesForThisStrategy -= placed;
+                    }
+                }
             }
         }         
         return output;
     }
     
 
+    /*
+     * Orders nodes by their distance to the closest node of the agent (see Ring.getDistance). A distance is at most the node count, so
+     * the nodes are sorted by counting in linear time. Nodes with the same distance keep their order, and if the agent has no nodes,
+     * the order doesn't change.
+     */
+    private static List<Node> byCloseness(Ring ring, List<Node> nodes) {
+        int nodeCount = ring.getNodeCount();
+        int[] distances = new int[nodes.size()];
+        int[] starts = new int[nodeCount + 2];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = Math.min(ring.getDistance(nodes.get(i).getNodeNumber(), Owner.MINE), nodeCount);
+            starts[distances[i] + 1]++;
+        }
+        for (int distance = 1; distance < starts.length; distance++) {
+            starts[distance] += starts[distance - 1];
+        }
+        Node[] sorted = new Node[distances.length];
+        for (int i = 0; i < distances.length; i++) {
+            sorted[starts[distances[i]]++] = nodes.get(i);
+        }
+        return Arrays.asList(sorted);
+    }
+
     /**
      * Returns the name of the Strategy as String.
      * @return "Expansion"
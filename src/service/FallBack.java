@@ -1,5 +1,6 @@
 package service;
 
+import java.util.Arrays;
 import java.util.List;
 
 import model.*;
@@ -24,48 +25,37 @@ public class FallBack extends Strategy {
      */
     @Override
     public Output move(Ring ring) {
-        Output output;
-        try {
-            // As this strategy is called upon when others have failed, the ring is read anew from the step file in order to undo changes from previous strategies.
-            ring = Util.readStatusFile(String.valueOf(Notes.getCurrentRound()));
-            output = new Output(ring.getMaxFerniesThisRound());
-            List<Node> mine = ring.getNodes(Owner.MINE);
-            Node node = null;
-            /*
-             * If there are fewer available fernies than nodes owned by the agent, one fernie is placed on all nodes until the agent runs out of fernies.
-             */
-            if (ring.getAvailableFernies() < mine.size()) {
-                while (ring.getAvailableFernies() > 0 && !mine.isEmpty()) {
-                    try {
-                        node = mine.getFirst();
-                        mine.removeFirst();
-                        ring.addFernies(node.getNodeNumber(), 1);
-                        output.upsert(node.getNodeNumber(), 1);
-                    } catch (FernieException e) {
-                        output.upsert(node.getNodeNumber(), e.getFernies());
-                    } catch (MoveException e) {
-                        System.out.println("Node number " + node.getNodeNumber() + ": " + e.getMessage());
-                    } 
-                }
-                // If there are more available fernies than nodes owned by the agent, the fernies are distributed evenly on all nodes.
-            } else  if (mine.size() > 0) {
-                int ferniesPerNode = ring.getAvailableFernies() / mine.size();
-                for (Node n: mine) {
-                    try {
-                        ring.addFernies(n.getNodeNumber(), ferniesPerNode);
-                        output.upsert(n.getNodeNumber(), ferniesPerNode);
-                    }  catch (FernieException e) {
-                        ferniesForThisStrategy -= e.getFernies();
-                        output.upsert(n.getNodeNumber(), e.getFernies());
-                    } catch (MoveException e) {
-                        System.out.println("Node number " + n.getNodeNumber() + ": " + e.getMessage());
-                    } 
+        if (ring == null) {
+            return new EmptyMove(notes).move(ring);
+        }
+        // As this strategy is called upon when others have failed, all changes of previous strategies are undone.
+        ring.rollback(0);
+        Output output = new Output(ring.getMaxFerniesThisRound());
+        List<Node> mine = ring.getNodes(Owner.MINE);
+        int[] nodes = new int[mine.size()];
+        int[] fernies = new int[mine.size()];
+        int moves = 0;
+        /*
+         * If there are fewer available fernies than nodes owned by the agent, one fernie is placed on all nodes until the agent runs out of fernies.
+         * Nodes that are already full are skipped.
+         */
+        if (ring.getAvailableFernies() < mine.size()) {
+            for (int i = 0; moves < ring.getAvailableFernies() && i < mine.size(); i++) {
+                if (mine.get(i).getFernieCount() < ring.getMaxFerniesPerNode()) {
+                    nodes[moves] = mine.get(i).getNodeNumber();
+                    fernies[moves++] = 1;
                 }
             }
-            // If reading the step file anew generates an InvalidStatusException an empty move file is generated.
-        } catch (InvalidStatusException e) {
-            output = new EmptyMove(notes).move(ring);
+            // If there are more available fernies than nodes owned by the agent, the fernies are distributed evenly on all nodes.
+        } else  if (mine.size() > 0) {
+            int ferniesPerNode = ring.getAvailableFernies() / mine.size();
+            for (Node n: mine) {
+                nodes[moves] = n.getNodeNumber();
+                fernies[moves++] = ferniesPerNode;
+            }
         }
+        // All moves are carried out as one batch.
+        applyMoves(ring, output, Arrays.copyOf(nodes, moves), Arrays.copyOf(fernies, moves));
         return output;
     }
     
@@ -0,0 +1,682 @@
+package service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import model.*;
+
+/**
+ * Append-only binary journal of the whole game, stored in {@code journal.bin} in the agent's directory.
+ * <p>
+ * Every turn appends the step state as the agent read it, the notes as they were before the analysis, the strategy, the ratios of
+ * the mixed strategy and the move the agent made, and the changes the moves made to the ring (i.e. the prediction). Together they are
+ * enough to rebuild any turn and decide it again (see {@link Replay}).
+ * <p>
+ * The step state is written as a delta against the step state of the previous turn, i.e. only the nodes that changed are stored. A
+ * full keyframe is written in the first turn, every {@value #KEYFRAME_INTERVAL} turns and whenever a delta wouldn't be much smaller,
+ * so a reader never has to go back further than the last keyframe.
+ * <p>
+ * All records are appended through one {@link FileChannel} and a small direct buffer. (The channel is positioned at the end of the
+ * file once, since a channel in {@code APPEND} mode can't be read, which the recovery needs.) When the journal is opened (e.g.
+ * at the start of every turn if the agent doesn't run as a daemon), the step state of the last turn is restored from the last keyframe
+ * and the deltas after it. A record that was only partly written, e.g. because the agent was terminated, is cut off.
+ * <p>
+ * Layout (numbers big-endian, varints as in {@link RingSnapshot}):
+ * <ul>
+ * <li>file header: magic number, format version (1 byte)</li>
+ * <li>records: type (1 byte), payload length (int), payload, CRC32 of type, length and payload</li>
+ * <li>{@link #KEYFRAME}: round, node count, maximum fernies per node, available fernies (ints), the owners (2 bits per node) and the
+ * fernie counts + 1 (varints)</li>
+ * <li>{@link #DELTA}: round, available fernies (ints), number of changed nodes (varint), and for every changed node the distance to the
+ * previous changed node (varint), its owner (1 byte) and its fernie count + 1 (varint)</li>
+ * <li>{@link #TURN}: round (int), strategy name (UTF-8 with a short length), the five ratios (doubles), number of lines (varint), and
+ * for every line of the move the distance to the node of the previous line and the fernies (zigzag varints)</li>
+ * <li>{@link #NOTES}: round (int), aggressiveness and defensiveness of the opponent (ordinals, 1 byte each), total attacks and attacks
+ * of the last round by the opponent, visibility range (ints), blocked attacks total and last round, attack buffer, the five ratios
+ * (doubles), initial analysis concluded (1 byte), my attacks and the abandoned nodes (number of nodes as varint, then the distance
+ * to the previous node as zigzag varints), the statistics of the last rounds ({@link Notes#getStatistics()}: number of values and
+ * the values from the oldest on as varints), and the threat scores ({@link ThreatMap}: number of nodes of the ring and number of
+ * threatened nodes as varints, then for every threatened node the distance to the previous one as varint and its score as float),
+ * and the beliefs about the nodes behind the fog of war ({@link BeliefMap}: number of nodes of the ring, the reinforcements and the
+ * visible opponent nodes of the last rounds like the statistics, and the number of hidden nodes as varints, then for every hidden
+ * node the distance to the previous one as varint, its owner as 1 byte, its fernie count + 1 and the round in which it was seen as
+ * varints); the statistics, the threat scores and the beliefs are missing in journals of older versions of the agent</li>
+ * <li>{@link #RESULT}: like {@link #DELTA}, but with the nodes that the moves of the agent changed, relative to the step state of the
+ * same turn</li>
+ * </ul>
+ * A turn starts with its step state record; the other records of the turn follow it. Readers skip record types they don't know.
+ */
+final class GameJournal implements Closeable {
+    /** Name of the journal file in the agent's directory. */
+    static final String FILE_NAME = "journal.bin";
+    /** Record type of a full step state. */
+    static final byte KEYFRAME = 1;
+    /** Record type of the changes of the step state since the previous turn. */
+    static final byte DELTA = 2;
+    /** Record type of the strategy, ratios and move of a turn. */
+    static final byte TURN = 3;
+    /** Record type of the notes at the start of a turn. */
+    static final byte NOTES = 4;
+    /** Record type of the changes of the ring by the moves of a turn. */
+    static final byte RESULT = 5;
+    private static final int MAGIC = 0x52574A4C; // "RWJL"
+    private static final byte VERSION = 1;
+    /** Position of the first record. */
+    static final int FILE_HEADER_SIZE = 5;
+    /** Size of the header of a record (type and payload length). */
+    static final int RECORD_HEADER_SIZE = 5;
+    private static final int KEYFRAME_INTERVAL = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    // Step state of the last recorded turn, null if there is none
+    private byte[] owners;
+    private int[] fernies;
+    private int deltasSinceKeyframe;
+
+    private GameJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the journal in a given directory, or creates it if it doesn't exist yet, and restores the step state of the last turn.
+     *
+     * @param directory the agent's directory
+     * @return the journal
+     * @throws IOException if the file can't be opened
+     */
+    static GameJournal open(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        GameJournal journal = new GameJournal(channel);
+        try {
+            journal.recover();
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return journal;
+    }
+
+    /**
+     * Opens the journal of the agent for a turn. Journaling can be switched off with the system property {@code ringwars.journal=false}.
+     * If the journal can't be opened, a message is printed and the game goes on without a journal.
+     *
+     * @param agentName the agent name (directory)
+     * @return the journal, or {@code null} if there is none
+     */
+    static GameJournal openForAgent(String agentName) {
+        if (!Boolean.parseBoolean(System.getProperty("ringwars.journal", "true"))) {
+            return null;
+        }
+        try {
+            return open(Path.of(agentName));
+        } catch (IOException e) {
+            System.out.println("The game journal could not be opened. The game continues without journal.");
+            return null;
+        }
+    }
+
+    // Checks the file header, finds the last keyframe and restores the step state from it, and cuts off a damaged end of the file.
+    private void recover() throws IOException {
+        long size = channel.size();
+        if (!hasHeader(channel)) {
+            if (size > 0) {
+                System.out.println("The game journal has an unknown format. A new journal is started.");
+            }
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).put(VERSION).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            return;
+        }
+        // The record headers are read first to find the last keyframe, the payloads are only read from there on.
+        long position = FILE_HEADER_SIZE;
+        long keyframe = -1;
+        for (long next; (next = nextRecord(channel, position)) != -1; position = next) {
+            if (typeOf(channel, position) == KEYFRAME) {
+                keyframe = position;
+            }
+        }
+        long end = position;
+        if (keyframe != -1) {
+            position = keyframe;
+            while (position < end) {
+                ByteBuffer payload = readRecord(position);
+                if (payload == null) {
+                    break;
+                }
+                byte type = typeOf(channel, position);
+                if (type == KEYFRAME) {
+                    readKeyframe(payload);
+                } else if (type == DELTA) {
+                    readDelta(payload);
+                }
+                position += RECORD_HEADER_SIZE + payload.capacity() + 4;
+            }
+            end = position;
+        }
+        if (end < size) {
+            System.out.println("The end of the game journal was damaged and has been removed (" + (size - end) + " bytes).");
+            channel.truncate(end);
+        }
+    }
+
+    /**
+     * Reads the payload of the record at a given position and checks its checksum.
+     *
+     * @param position the position of the record
+     * @return the payload, or {@code null} if the record is incomplete or damaged
+     * @throws IOException if reading fails
+     */
+    private ByteBuffer readRecord(long position) throws IOException {
+        return readRecord(channel, position, crc);
+    }
+
+    /**
+     * Reads the payload of the record at a given position of a journal file and checks its checksum.
+     *
+     * @param channel  the channel of the journal file
+     * @param position the position of the record
+     * @param crc      the checksum used for the check
+     * @return the payload (the type is returned by {@link #typeOf(FileChannel, long)}), or {@code null} if the record is incomplete or
+     *         damaged
+     * @throws IOException if reading fails
+     */
+    static ByteBuffer readRecord(FileChannel channel, long position, CRC32 crc) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        ByteBuffer checksum = ByteBuffer.allocate(4);
+        if (!readFully(channel, header, position)) {
+            return null;
+        }
+        int length = header.getInt(1);
+        if (length < 0 || position + RECORD_HEADER_SIZE + length + 4 > channel.size()
+                || !readFully(channel, checksum, position + RECORD_HEADER_SIZE + length)) {
+            return null;
+        }
+        // The payload is read onto the heap rather than mapped, so no mapping keeps the file from being truncated by recover().
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(channel, payload, position + RECORD_HEADER_SIZE)) {
+            return null;
+        }
+        payload.flip();
+        crc.reset();
+        crc.update(header.array());
+        crc.update(payload.duplicate());
+        return (int) crc.getValue() == checksum.getInt(0) ? payload : null;
+    }
+
+    /**
+     * Returns whether a file starts with the header of a journal of the current version.
+     *
+     * @param channel the channel of the file
+     * @return {@code true} if the file is a journal
+     * @throws IOException if reading fails
+     */
+    static boolean hasHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        return readFully(channel, header, 0) && header.getInt(0) == MAGIC && header.get(4) == VERSION;
+    }
+
+    /**
+     * Returns the position of the record after the record at a given position of a journal file. Only the header of the record is
+     * read, its checksum is not checked.
+     *
+     * @param channel  the channel of the journal file
+     * @param position the position of the record
+     * @return the position of the next record, or -1 if the record is incomplete
+     * @throws IOException if reading fails
+     */
+    static long nextRecord(FileChannel channel, long position) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        if (!readFully(channel, header, position)) {
+            return -1;
+        }
+        int length = header.getInt(1);
+        long next = position + RECORD_HEADER_SIZE + length + 4;
+        return length < 0 || next > channel.size() ? -1 : next;
+    }
+
+    /**
+     * Returns the type of the record at a given position of a journal file.
+     *
+     * @param channel  the channel of the journal file
+     * @param position the position of the record
+     * @return the type, or -1 if there is no record
+     * @throws IOException if reading fails
+     */
+    static byte typeOf(FileChannel channel, long position) throws IOException {
+        ByteBuffer type = ByteBuffer.allocate(1);
+        return readFully(channel, type, position) ? type.get(0) : -1;
+    }
+
+    /**
+     * Reads from a given position of a channel until a buffer is full.
+     *
+     * @param channel  the channel
+     * @param target   the buffer
+     * @param position the position
+     * @return {@code true} if the buffer is full, {@code false} if the channel ended before
+     * @throws IOException if reading fails
+     */
+    static boolean readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Restores the step state from a keyframe.
+    private void readKeyframe(ByteBuffer payload) {
+        payload.getInt(); // round
+        int nodeCount = payload.getInt();
+        payload.getInt(); // maximum fernies per node
+        payload.getInt(); // available fernies
+        owners = new byte[nodeCount];
+        fernies = new int[nodeCount];
+        decodeKeyframe(payload, owners, fernies);
+        deltasSinceKeyframe = 0;
+    }
+
+    /**
+     * Decodes the owners and fernie counts of a keyframe, whose position is after the four ints at its start.
+     *
+     * @param payload the payload
+     * @param owners  the array for the owners
+     * @param fernies the array for the fernie counts
+     */
+    static void decodeKeyframe(ByteBuffer payload, byte[] owners, int[] fernies) {
+        for (int i = 0; i < owners.length; i += 4) {
+            int packed = payload.get() & 0xFF;
+            for (int j = 0; j < 4 && i + j < owners.length; j++) {
+                owners[i + j] = (byte) ((packed >>> (2 * j)) & 3);
+            }
+        }
+        for (int i = 0; i < fernies.length; i++) {
+            fernies[i] = RingSnapshot.getVarint(payload) - 1;
+        }
+    }
+
+    // Applies a delta to the step state.
+    private void readDelta(ByteBuffer payload) {
+        payload.getInt(); // round
+        payload.getInt(); // available fernies
+        if (owners != null) {
+            decodeDelta(payload, owners, fernies);
+        }
+        deltasSinceKeyframe++;
+    }
+
+    /**
+     * Applies the changed nodes of a delta, whose position is after the two ints at its start, to a step state.
+     *
+     * @param payload the payload
+     * @param owners  the owners of the step state
+     * @param fernies the fernie counts of the step state
+     */
+    static void decodeDelta(ByteBuffer payload, byte[] owners, int[] fernies) {
+        int changes = RingSnapshot.getVarint(payload);
+        int nodeNumber = 0;
+        for (int k = 0; k < changes; k++) {
+            nodeNumber += RingSnapshot.getVarint(payload);
+            owners[nodeNumber] = payload.get();
+            fernies[nodeNumber] = RingSnapshot.getVarint(payload) - 1;
+        }
+    }
+
+    /**
+     * Appends the step state of a turn, before the agent has made its moves. The state is written as a delta against the state of the
+     * previous turn, or as a keyframe.
+     *
+     * @param round the round
+     * @param ring  the ring as read from the step file
+     * @throws IOException if writing fails
+     */
+    void recordStep(int round, Ring ring) throws IOException {
+        int n = ring.getNodeCount();
+        if (owners != null && owners.length == n && deltasSinceKeyframe < KEYFRAME_INTERVAL) {
+            long measure = measureChanges(ring);
+            if ((int) (measure >>> 32) <= n / 4) {
+                writeChanges(DELTA, round, ring, measure, true);
+                deltasSinceKeyframe++;
+                return;
+            }
+        }
+        writeKeyframe(round, ring);
+    }
+
+    /*
+     * Counts the nodes of a ring that differ from the recorded step state, since the length of the record is written before its
+     * payload. Returns the number of changed nodes in the upper and the length of the record in the lower 32 bits.
+     */
+    private long measureChanges(Ring ring) {
+        int changes = 0;
+        int length = 8;
+        int previous = 0;
+        for (int i = 0; i < owners.length; i++) {
+            int count = ring.getFernieCount(i);
+            if (ring.getOwner(i).ordinal() != owners[i] || count != fernies[i]) {
+                changes++;
+                length += varintSize(i - previous) + 1 + varintSize(count + 1);
+                previous = i;
+            }
+        }
+        length += varintSize(changes);
+        return (long) changes << 32 | length;
+    }
+
+    // Writes the nodes of a ring that differ from the recorded step state, and makes the ring the recorded step state if update is set.
+    private void writeChanges(byte type, int round, Ring ring, long measure, boolean update) throws IOException {
+        begin(type, (int) measure);
+        buffer.putInt(round).putInt(ring.getAvailableFernies());
+        RingSnapshot.putVarint(buffer, (int) (measure >>> 32));
+        int previous = 0;
+        for (int i = 0; i < owners.length; i++) {
+            byte owner = (byte) ring.getOwner(i).ordinal();
+            int count = ring.getFernieCount(i);
+            if (owner != owners[i] || count != fernies[i]) {
+                ensure(11);
+                RingSnapshot.putVarint(buffer, i - previous);
+                buffer.put(owner);
+                RingSnapshot.putVarint(buffer, count + 1);
+                if (update) {
+                    owners[i] = owner;
+                    fernies[i] = count;
+                }
+                previous = i;
+            }
+        }
+        end();
+    }
+
+    private void writeKeyframe(int round, Ring ring) throws IOException {
+        int n = ring.getNodeCount();
+        byte[] newOwners = new byte[n];
+        int[] newFernies = new int[n];
+        long length = 16 + (n + 3) / 4;
+        for (int i = 0; i < n; i++) {
+            newOwners[i] = (byte) ring.getOwner(i).ordinal();
+            newFernies[i] = ring.getFernieCount(i);
+            length += varintSize(newFernies[i] + 1);
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("The ring is too large for a keyframe (" + length + " bytes).");
+        }
+        begin(KEYFRAME, (int) length);
+        buffer.putInt(round).putInt(n).putInt(ring.getMaxFerniesPerNode()).putInt(ring.getAvailableFernies());
+        for (int i = 0; i < n; i += 4) {
+            int packed = 0;
+            for (int j = 0; j < 4 && i + j < n; j++) {
+                packed |= newOwners[i + j] << (2 * j);
+            }
+            ensure(1);
+            buffer.put((byte) packed);
+        }
+        for (int i = 0; i < n; i++) {
+            ensure(5);
+            RingSnapshot.putVarint(buffer, newFernies[i] + 1);
+        }
+        end();
+        owners = newOwners;
+        fernies = newFernies;
+        deltasSinceKeyframe = 0;
+    }
+
+    /**
+     * Appends the notes of a turn as they are before the analysis of the previous round, i.e. as the agent read them.
+     *
+     * @param round the round
+     * @param notes the notes
+     * @throws IOException if writing fails
+     */
+    void recordNotes(int round, Notes notes) throws IOException {
+        List<Integer> attacks = notes.getMyAttacks();
+        List<Integer> abandoned = notes.getAbandoned();
+        RollingWindow[] statistics = notes.getStatistics();
+        ThreatMap threats = notes.getThreats();
+        int[] threatened = threats.getThreatenedNodes();
+        BeliefMap beliefs = notes.getBeliefs();
+        RollingWindow[] behaviour = { beliefs.getReinforcements(), beliefs.getOpponentNodes() };
+        int[] hidden = beliefs.getHiddenNodes();
+        long length = 4 + 2 + 12 + 3 * 8 + 8L * notes.getRatiosThisRound().length + 1 + listSize(attacks) + listSize(abandoned);
+        for (RollingWindow window : statistics) {
+            length += varintSize(window.size());
+            for (int i = 0; i < window.size(); i++) {
+                length += varintSize(window.get(i));
+            }
+        }
+        length += varintSize(threats.getNodeCount()) + varintSize(threatened.length);
+        for (int i = 0; i < threatened.length; i++) {
+            length += varintSize(threatened[i] - (i == 0 ? 0 : threatened[i - 1])) + 4;
+        }
+        length += varintSize(beliefs.getNodeCount()) + varintSize(hidden.length);
+        for (RollingWindow window : behaviour) {
+            length += varintSize(window.size());
+            for (int i = 0; i < window.size(); i++) {
+                length += varintSize(window.get(i));
+            }
+        }
+        for (int i = 0; i < hidden.length; i++) {
+            length += varintSize(hidden[i] - (i == 0 ? 0 : hidden[i - 1])) + 1 + varintSize(beliefs.getFernieCount(hidden[i]) + 1)
+                    + varintSize(beliefs.getRoundSeen(hidden[i]));
+        }
+        begin(NOTES, (int) length);
+        buffer.putInt(round).put((byte) notes.getAggressiveness().ordinal()).put((byte) notes.getDefensiveness().ordinal())
+                .putInt(notes.getTotalAttacksByOpponent()).putInt(notes.getLastRoundAttacksByOpponent()).putInt(notes.getVisibility())
+                .putDouble(notes.getBlockedAttacksTotal()).putDouble(notes.getBlockedAttacksLastRound())
+                .putDouble(notes.getAttackBuffer());
+        for (double ratio : notes.getRatiosThisRound()) {
+            buffer.putDouble(ratio);
+        }
+        buffer.put((byte) (notes.isAnalysed() ? 1 : 0));
+        putList(attacks);
+        putList(abandoned);
+        for (RollingWindow window : statistics) {
+            ensure(5);
+            RingSnapshot.putVarint(buffer, window.size());
+            for (int i = 0; i < window.size(); i++) {
+                ensure(5);
+                RingSnapshot.putVarint(buffer, window.get(i));
+            }
+        }
+        ensure(10);
+        RingSnapshot.putVarint(buffer, threats.getNodeCount());
+        RingSnapshot.putVarint(buffer, threatened.length);
+        int previous = 0;
+        for (int nodeNumber : threatened) {
+            ensure(9);
+            RingSnapshot.putVarint(buffer, nodeNumber - previous);
+            buffer.putFloat((float) threats.getThreat(nodeNumber));
+            previous = nodeNumber;
+        }
+        ensure(5);
+        RingSnapshot.putVarint(buffer, beliefs.getNodeCount());
+        for (RollingWindow window : behaviour) {
+            ensure(5);
+            RingSnapshot.putVarint(buffer, window.size());
+            for (int i = 0; i < window.size(); i++) {
+                ensure(5);
+                RingSnapshot.putVarint(buffer, window.get(i));
+            }
+        }
+        ensure(5);
+        RingSnapshot.putVarint(buffer, hidden.length);
+        previous = 0;
+        for (int nodeNumber : hidden) {
+            ensure(16);
+            RingSnapshot.putVarint(buffer, nodeNumber - previous);
+            buffer.put((byte) beliefs.getOwner(nodeNumber).ordinal());
+            RingSnapshot.putVarint(buffer, beliefs.getFernieCount(nodeNumber) + 1);
+            RingSnapshot.putVarint(buffer, beliefs.getRoundSeen(nodeNumber));
+            previous = nodeNumber;
+        }
+        end();
+    }
+
+    private static long listSize(List<Integer> nodes) {
+        long size = varintSize(nodes.size());
+        int previous = 0;
+        for (int nodeNumber : nodes) {
+            size += varintSize(zigzag(nodeNumber - previous));
+            previous = nodeNumber;
+        }
+        return size;
+    }
+
+    private void putList(List<Integer> nodes) throws IOException {
+        ensure(5);
+        RingSnapshot.putVarint(buffer, nodes.size());
+        int previous = 0;
+        for (int nodeNumber : nodes) {
+            ensure(5);
+            RingSnapshot.putVarint(buffer, zigzag(nodeNumber - previous));
+            previous = nodeNumber;
+        }
+    }
+
+    /**
+     * Decodes a list of node numbers of a {@link #NOTES} record.
+     *
+     * @param payload the payload, positioned at the list
+     * @return the node numbers
+     */
+    static List<Integer> getList(ByteBuffer payload) {
+        int size = RingSnapshot.getVarint(payload);
+        List<Integer> nodes = new ArrayList<>(size);
+        int nodeNumber = 0;
+        for (int i = 0; i < size; i++) {
+            nodeNumber += unzigzag(RingSnapshot.getVarint(payload));
+            nodes.add(nodeNumber);
+        }
+        return nodes;
+    }
+
+    /**
+     * Appends the strategy, the ratios of the mixed strategy and the move of a turn, and the changes that the moves made to the ring.
+     *
+     * @param round    the round
+     * @param strategy the name of the executed strategy
+     * @param ratios   the ratios of the mixed strategy
+     * @param move     the move that is written to the move file, or {@code null} if the move is empty
+     * @param ring     the ring after the moves (the prediction)
+     * @throws IOException if writing fails
+     */
+    void recordTurn(int round, String strategy, double[] ratios, Output move, Ring ring) throws IOException {
+        byte[] name = strategy.getBytes(StandardCharsets.UTF_8);
+        int lines = move == null ? 0 : move.size();
+        long length = 4 + 2 + name.length + 8L * ratios.length + varintSize(lines);
+        int previous = 0;
+        for (int line = 0; line < lines; line++) {
+            length += varintSize(zigzag(move.getNodeNumber(line) - previous)) + varintSize(zigzag(move.getFernies(line)));
+            previous = move.getNodeNumber(line);
+        }
+        begin(TURN, (int) length);
+        buffer.putInt(round).putShort((short) name.length);
+        for (byte b : name) {
+            ensure(1);
+            buffer.put(b);
+        }
+        for (double ratio : ratios) {
+            ensure(8);
+            buffer.putDouble(ratio);
+        }
+        RingSnapshot.putVarint(buffer, lines);
+        previous = 0;
+        for (int line = 0; line < lines; line++) {
+            ensure(10);
+            RingSnapshot.putVarint(buffer, zigzag(move.getNodeNumber(line) - previous));
+            RingSnapshot.putVarint(buffer, zigzag(move.getFernies(line)));
+            previous = move.getNodeNumber(line);
+        }
+        end();
+        // The changes are relative to the step state of this turn, which stays the recorded state for the delta of the next turn.
+        if (owners != null && owners.length == ring.getNodeCount()) {
+            writeChanges(RESULT, round, ring, measureChanges(ring), false);
+        }
+    }
+
+    // Starts a record: the checksum is reset and the header is written into the buffer.
+    private void begin(byte type, int length) throws IOException {
+        buffer.clear();
+        crc.reset();
+        buffer.put(type).putInt(length);
+    }
+
+    // Finishes a record: the rest of the buffer and the checksum are written.
+    private void end() throws IOException {
+        flush();
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Flushes the buffer if it has less than a given number of bytes left.
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    // Writes the content of the buffer into the channel and adds it to the checksum.
+    private void flush() throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the number of bytes of an unsigned varint.
+     *
+     * @param value the value, interpreted as unsigned
+     * @return number of bytes
+     */
+    static int varintSize(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /**
+     * Maps a signed number to an unsigned number, so that numbers close to 0 have short varints.
+     *
+     * @param value the signed number
+     * @return the unsigned number
+     */
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Reverses {@link #zigzag(int)}.
+     *
+     * @param value the unsigned number
+     * @return the signed number
+     */
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
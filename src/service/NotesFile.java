@@ -0,0 +1,300 @@
+package service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import model.*;
+
+/**
+ * Reads and writes the notes of the agent as a binary record with a fixed layout in {@code notes.bin}.
+ * <p>
+ * The scalar fields have fixed offsets, so they are read and written directly in the mapped file, and the record is updated in place
+ * every turn instead of being rewritten. The file only grows when the lists don't fit anymore; it is never truncated, the lengths of
+ * the lists tell where the record ends. The pages of the mapping belong to the page cache, so an update is not lost if the agent is
+ * terminated after the turn.
+ * <p>
+ * Layout of schema version {@value #VERSION} (all numbers big-endian):
+ * <ul>
+ * <li>0: magic number (int), 4: schema version (1 byte), 5: flags (1 byte, bit 0: initial analysis concluded), 6: aggressiveness and
+ * 7: defensiveness of the opponent (ordinals, 1 byte each), 8: offset of the lists (int), 12: CRC32 of the record without this
+ * field</li>
+ * <li>16: round, 20: visibility range, 24: total attacks and 28: attacks of the last round by the opponent (ints)</li>
+ * <li>32: blocked attacks total, 40: blocked attacks last round, 48: attack buffer, 56: the five ratios of the mixed strategy
+ * (doubles)</li>
+ * <li>96: number of my attacks and 100: number of abandoned nodes (ints)</li>
+ * <li>104: capacity of the statistics of the last rounds (int), then for each of the attacks by the opponent, the blocked attacks, the
+ * captures and the losses ({@link RollingWindow}): the number of values and the values from the oldest on, padded to the capacity
+ * (ints)</li>
+ * <li>from the offset of the lists: my attacks, then the abandoned nodes (ints)</li>
+ * <li>after the lists: the threat scores ({@link ThreatMap}): the number of nodes of the ring and the number of threatened nodes
+ * (ints), then for each threatened node its number (int) and its score (float)</li>
+ * <li>after the threat scores: the beliefs about the nodes behind the fog of war ({@link BeliefMap}): the number of nodes of the ring
+ * and the capacity of the reinforcements of the last rounds (ints), the reinforcements and the visible opponent nodes of the last
+ * rounds (like the statistics), and the number of hidden nodes (int), then for each hidden node its number (int), its owner (1 byte),
+ * its fernie count and the round in which it was seen (ints)</li>
+ * </ul>
+ * Schema version 1 had no statistics, its lists start at 104, schema version 2 had no threat scores and schema version 3 no beliefs;
+ * records of these versions are still read. A later schema version may add
+ * scalar fields before the lists; it then moves the offset of the lists, so the fields of this version keep their offsets. A record
+ * that can't be read (e.g. a damaged one) is reported, and the notes are read from the text file {@code notes.txt} of older versions
+ * of the agent instead (see {@link Util#readNotes(String, Ring, int)}).
+ */
+final class NotesFile {
+    /** Name of the notes file in the agent's directory. */
+    static final String FILE_NAME = "notes.bin";
+    private static final int MAGIC = 0x52574E4F; // "RWNO"
+    private static final byte VERSION = 4;
+    private static final int CRC = 12;
+    private static final int ROUND = 16;
+    private static final int VISIBILITY = 20;
+    private static final int ATTACKS_TOTAL = 24;
+    private static final int ATTACKS_LAST_ROUND = 28;
+    private static final int BLOCKED_TOTAL = 32;
+    private static final int BLOCKED_LAST_ROUND = 40;
+    private static final int ATTACK_BUFFER = 48;
+    private static final int RATIOS = 56;
+    private static final int ATTACK_COUNT = 96;
+    private static final int ABANDONED_COUNT = 100;
+    private static final int WINDOWS = 104;
+    // Size of the beliefs without the hidden nodes: number of nodes, capacity, two windows and the number of hidden nodes.
+    private static final int BELIEFS = 4 + 4 + 2 * 4 * (1 + BeliefMap.WINDOW_SIZE) + 4;
+    // The file is grown in steps of a page, so a few more attacks don't change the size of the mapping every turn.
+    private static final int PAGE_SIZE = 4096;
+
+    private NotesFile() {
+    }
+
+    /**
+     * Writes the notes into the record of a file, which is created if it doesn't exist.
+     *
+     * @param notes the notes
+     * @param path  the path of the file
+     * @throws IOException if writing fails
+     */
+    static void write(Notes notes, Path path) throws IOException {
+        List<Integer> attacks = notes.getMyAttacks();
+        List<Integer> abandoned = notes.getAbandoned();
+        RollingWindow[] windows = notes.getStatistics();
+        ThreatMap threats = notes.getThreats();
+        int[] threatened = threats.getThreatenedNodes();
+        int lists = WINDOWS + 4 + 4 * windows.length * (1 + Notes.WINDOW_SIZE);
+        BeliefMap beliefs = notes.getBeliefs();
+        int[] hidden = beliefs.getHiddenNodes();
+        long size = lists + 4L * (attacks.size() + abandoned.size()) + 8 + 8L * threatened.length + BELIEFS + 13L * hidden.length;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            /*
+             * The file is grown by writing its last byte before it is mapped, so the mapping never has to extend the file. Extending
+             * a file by mapping it fails on Windows while the mapping of the previous turn (in the daemon) hasn't been reclaimed yet.
+             */
+            long grown = (size + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+            if (channel.size() < grown) {
+                channel.write(ByteBuffer.allocate(1), grown - 1);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.putInt(0, MAGIC).put(4, VERSION).put(5, (byte) (notes.isAnalysed() ? 1 : 0))
+                    .put(6, (byte) notes.getAggressiveness().ordinal()).put(7, (byte) notes.getDefensiveness().ordinal())
+                    .putInt(8, lists);
+            buffer.putInt(ROUND, Notes.getCurrentRound()).putInt(VISIBILITY, notes.getVisibility())
+                    .putInt(ATTACKS_TOTAL, notes.getTotalAttacksByOpponent())
+                    .putInt(ATTACKS_LAST_ROUND, notes.getLastRoundAttacksByOpponent());
+            buffer.putDouble(BLOCKED_TOTAL, notes.getBlockedAttacksTotal())
+                    .putDouble(BLOCKED_LAST_ROUND, notes.getBlockedAttacksLastRound()).putDouble(ATTACK_BUFFER, notes.getAttackBuffer());
+            double[] ratios = notes.getRatiosThisRound();
+            for (int i = 0; i < ratios.length; i++) {
+                buffer.putDouble(RATIOS + 8 * i, ratios[i]);
+            }
+            buffer.putInt(ATTACK_COUNT, attacks.size()).putInt(ABANDONED_COUNT, abandoned.size());
+            buffer.putInt(WINDOWS, Notes.WINDOW_SIZE);
+            int offset = WINDOWS + 4;
+            for (RollingWindow window : windows) {
+                buffer.putInt(offset, window.size());
+                for (int i = 0; i < Notes.WINDOW_SIZE; i++) {
+                    buffer.putInt(offset + 4 * (1 + i), i < window.size() ? window.get(i) : 0);
+                }
+                offset += 4 * (1 + Notes.WINDOW_SIZE);
+            }
+            offset = lists;
+            for (int nodeNumber : attacks) {
+                buffer.putInt(offset, nodeNumber);
+                offset += 4;
+            }
+            for (int nodeNumber : abandoned) {
+                buffer.putInt(offset, nodeNumber);
+                offset += 4;
+            }
+            buffer.putInt(offset, threats.getNodeCount()).putInt(offset + 4, threatened.length);
+            offset += 8;
+            for (int nodeNumber : threatened) {
+                buffer.putInt(offset, nodeNumber).putFloat(offset + 4, (float) threats.getThreat(nodeNumber));
+                offset += 8;
+            }
+            buffer.putInt(offset, beliefs.getNodeCount()).putInt(offset + 4, BeliefMap.WINDOW_SIZE);
+            offset += 8;
+            for (RollingWindow window : new RollingWindow[] { beliefs.getReinforcements(), beliefs.getOpponentNodes() }) {
+                buffer.putInt(offset, window.size());
+                for (int i = 0; i < BeliefMap.WINDOW_SIZE; i++) {
+                    buffer.putInt(offset + 4 * (1 + i), i < window.size() ? window.get(i) : 0);
+                }
+                offset += 4 * (1 + BeliefMap.WINDOW_SIZE);
+            }
+            buffer.putInt(offset, hidden.length);
+            offset += 4;
+            for (int nodeNumber : hidden) {
+                buffer.putInt(offset, nodeNumber).put(offset + 4, (byte) beliefs.getOwner(nodeNumber).ordinal())
+                        .putInt(offset + 5, beliefs.getFernieCount(nodeNumber)).putInt(offset + 9, beliefs.getRoundSeen(nodeNumber));
+                offset += 13;
+            }
+            buffer.putInt(CRC, checksum(buffer, offset));
+        }
+    }
+
+    /**
+     * Reads the notes from the record of a file.
+     *
+     * @param path  the path of the file
+     * @param round the current round
+     * @return the notes
+     * @throws IOException            if reading fails
+     * @throws InvalidStatusException if the record is damaged or has an unknown schema version
+     */
+    static Notes read(Path path, int round) throws IOException, InvalidStatusException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < WINDOWS || size > Integer.MAX_VALUE) {
+                throw new InvalidStatusException("The notes record has an invalid size (" + size + " bytes).");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte version = buffer.get(4);
+            if (buffer.getInt(0) != MAGIC || version < 1 || version > VERSION) {
+                throw new InvalidStatusException("The notes record has an unknown format.");
+            }
+            int lists = buffer.getInt(8);
+            int attackCount = buffer.getInt(ATTACK_COUNT);
+            int abandonedCount = buffer.getInt(ABANDONED_COUNT);
+            long end = lists + 4L * attackCount + 4L * abandonedCount;
+            if (lists < WINDOWS || attackCount < 0 || abandonedCount < 0 || end > size) {
+                throw new InvalidStatusException("The notes record has invalid list lengths.");
+            }
+            int threatCount = 0;
+            if (version >= 3) {
+                threatCount = end + 8 <= size ? buffer.getInt((int) end + 4) : -1;
+                if (threatCount < 0 || end + 8 + 8L * threatCount > size) {
+                    throw new InvalidStatusException("The notes record has an invalid number of threat scores.");
+                }
+                end += 8 + 8L * threatCount;
+            }
+            long beliefs = end;
+            int beliefCapacity = 0;
+            int hiddenCount = 0;
+            if (version >= 4) {
+                beliefCapacity = end + 8 <= size ? buffer.getInt((int) end + 4) : -1;
+                long hiddenOffset = end + 8 + 8L * (1 + beliefCapacity);
+                hiddenCount = beliefCapacity >= 0 && hiddenOffset + 4 <= size ? buffer.getInt((int) hiddenOffset) : -1;
+                if (hiddenCount < 0 || hiddenOffset + 4 + 13L * hiddenCount > size) {
+                    throw new InvalidStatusException("The notes record has an invalid number of beliefs.");
+                }
+                end = hiddenOffset + 4 + 13L * hiddenCount;
+            }
+            if (buffer.getInt(CRC) != checksum(buffer, (int) end)) {
+                throw new InvalidStatusException("The checksum of the notes record is wrong.");
+            }
+            StrategyOpponent[] values = StrategyOpponent.values();
+            StrategyOpponent[] strategyOpponent = { values[buffer.get(6)], values[buffer.get(7)] };
+            double[] ratios = new double[5];
+            for (int i = 0; i < ratios.length; i++) {
+                ratios[i] = buffer.getDouble(RATIOS + 8 * i);
+            }
+            List<Integer> attacks = new ArrayList<>(attackCount);
+            for (int i = 0; i < attackCount; i++) {
+                attacks.add(buffer.getInt(lists + 4 * i));
+            }
+            List<Integer> abandoned = new ArrayList<>(abandonedCount);
+            for (int i = 0; i < abandonedCount; i++) {
+                abandoned.add(buffer.getInt(lists + 4 * (attackCount + i)));
+            }
+            Notes notes = new Notes(round, strategyOpponent, buffer.getInt(ATTACKS_TOTAL), buffer.getInt(ATTACKS_LAST_ROUND),
+                    buffer.getInt(VISIBILITY), attacks, abandoned, buffer.getDouble(BLOCKED_TOTAL), buffer.getDouble(BLOCKED_LAST_ROUND),
+                    buffer.getDouble(ATTACK_BUFFER), ratios, (buffer.get(5) & 1) != 0);
+            if (version >= 2) {
+                readWindows(buffer, lists, notes.getStatistics());
+            }
+            if (version >= 3) {
+                readThreats(buffer, lists + 4 * (attackCount + abandonedCount), threatCount, notes.getThreats());
+            }
+            if (version >= 4) {
+                readBeliefs(buffer, (int) beliefs, beliefCapacity, hiddenCount, notes.getBeliefs());
+            }
+            return notes;
+        }
+    }
+
+    /*
+     * Adds the values of the statistics of the record to the empty windows of the notes. If the record was written with another
+     * capacity, the windows keep the newest values that fit.
+     */
+    private static void readWindows(MappedByteBuffer buffer, int lists, RollingWindow[] windows) throws InvalidStatusException {
+        int capacity = buffer.getInt(WINDOWS);
+        if (capacity < 0 || WINDOWS + 4 + 4L * windows.length * (1 + capacity) > lists) {
+            throw new InvalidStatusException("The notes record has an invalid capacity of the statistics (" + capacity + ").");
+        }
+        int offset = WINDOWS + 4;
+        for (RollingWindow window : windows) {
+            int size = Math.min(Math.max(buffer.getInt(offset), 0), capacity);
+            for (int i = 0; i < size; i++) {
+                window.add(buffer.getInt(offset + 4 * (1 + i)));
+            }
+            offset += 4 * (1 + capacity);
+        }
+    }
+
+    // Restores the threat scores of the record, skipping the nodes that are outside of the ring.
+    private static void readThreats(MappedByteBuffer buffer, int offset, int count, ThreatMap threats) {
+        threats.reset(Math.max(buffer.getInt(offset), 0));
+        offset += 8;
+        for (int i = 0; i < count; i++) {
+            int nodeNumber = buffer.getInt(offset);
+            if (nodeNumber >= 0 && nodeNumber < threats.getNodeCount()) {
+                threats.setThreat(nodeNumber, buffer.getFloat(offset + 4));
+            }
+            offset += 8;
+        }
+    }
+
+    // Restores the beliefs of the record, skipping the nodes that are outside of the ring or have an unknown owner.
+    private static void readBeliefs(MappedByteBuffer buffer, int offset, int capacity, int count, BeliefMap beliefs) {
+        beliefs.reset(Math.max(buffer.getInt(offset), 0));
+        offset += 8;
+        for (RollingWindow window : new RollingWindow[] { beliefs.getReinforcements(), beliefs.getOpponentNodes() }) {
+            int size = Math.min(Math.max(buffer.getInt(offset), 0), capacity);
+            for (int i = 0; i < size; i++) {
+                window.add(buffer.getInt(offset + 4 * (1 + i)));
+            }
+            offset += 4 * (1 + capacity);
+        }
+        offset += 4;
+        Owner[] owners = Owner.values();
+        for (int i = 0; i < count; i++) {
+            int nodeNumber = buffer.getInt(offset);
+            int owner = buffer.get(offset + 4);
+            if (nodeNumber >= 0 && nodeNumber < beliefs.getNodeCount() && owner >= 0 && owner < owners.length) {
+                beliefs.setBelief(nodeNumber, owners[owner], buffer.getInt(offset + 5), buffer.getInt(offset + 9));
+            }
+            offset += 13;
+        }
+    }
+
+    // Computes the checksum of the record up to a given end, without the checksum field itself.
+    private static int checksum(MappedByteBuffer buffer, int end) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, CRC));
+        crc.update(buffer.slice(CRC + 4, end - CRC - 4));
+        return (int) crc.getValue();
+    }
+}
@@ -1,7 +1,7 @@
 package service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.SplittableRandom;
 
 import model.*;
 
@@ -12,11 +12,14 @@ public class RINGwars_8878390_Koebke_Vanessa {
     
     /**
      * Main method.
-     * @param args the step number and the agent name
+     * <p>
+     * If the optional third argument {@code daemon} is given, the agent doesn't terminate after the turn, but stays resident for the
+     * whole game and plays every following turn as soon as its step file appears (see {@link Daemon}).
+     * @param args the step number, the agent name and optionally {@code daemon}
      */
     public static void main(String[] args) {
         if (args.length < 2) {
-            System.out.println("Please enter valid arguments: <Step number> <Agent name>. The program terminates now.");
+            System.out.println("Please enter valid arguments: <Step number> <Agent name> [daemon]. The program terminates now.");
             return;
         }
         int round;
@@ -27,13 +30,11 @@ public class RINGwars_8878390_Koebke_Vanessa {
             return;
         }
         String agentName = args[1];
-        Ring ring = null;
-        try {
-            ring = Util.readStatusFile(agentName, args[0]);
-        } catch (InvalidStatusException e) {
-            System.out.println(e.getMessage());
-            System.out.println("An empty move file will be created.");
+        if (args.length > 2 && args[2].equals("daemon")) {
+            Daemon.run(round, agentName);
+            return;
         }
+        Ring ring = readStep(agentName, args[0]);
         // Begin tracker blocked. This was used to track my wins and losses over the course of various games. See PDF documentation for its use.
 //        Tracker.read();
 //        if (round == 1) {
@@ -49,22 +50,91 @@ public class RINGwars_8878390_Koebke_Vanessa {
 //        }
         // End tracker block
         Notes notes = Util.readNotes(agentName, ring, round);
+        GameJournal journal = GameJournal.openForAgent(agentName);
+        playTurn(agentName, ring, notes, null, journal);
+        closeJournal(journal);
+    }
+
+    /**
+     * Closes the game journal at the end of the game (or of the turn, if the agent doesn't run as a daemon).
+     * @param journal the journal, or {@code null}
+     */
+    static void closeJournal(GameJournal journal) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("The game journal could not be closed.");
+        }
+    }
+
+    /**
+     * Reads the step file with a given number. If the step file is invalid, {@code null} is returned, so that an empty move file is
+     * created.
+     * @param agentName the agent name
+     * @param step the step number
+     * @return the ring or {@code null}
+     */
+    static Ring readStep(String agentName, String step) {
+        try {
+            return Util.readStatusFile(agentName, step);
+        } catch (InvalidStatusException e) {
+            System.out.println(e.getMessage());
+            System.out.println("An empty move file will be created.");
+            return null;
+        }
+    }
+
+    /**
+     * Plays one turn: selects the strategy, executes it and writes the move, notes and prediction files.
+     * @param agentName the agent name
+     * @param ring the ring of the current round
+     * @param notes the notes
+     * @param previousRound the ring as the agent left it in the previous round, or {@code null} if it should be read from the prediction file
+     * @param journal the game journal, or {@code null} if the turn isn't recorded
+     */
+    static void playTurn(String agentName, Ring ring, Notes notes, Ring previousRound, GameJournal journal) {
+        /*
+         * All random decisions of the turn use one generator. The seed is printed, so a turn can be reproduced by passing it with
+         * -Dringwars.seed.
+         */
+        if (ring != null) {
+            long seed = Long.getLong("ringwars.seed", System.nanoTime());
+            ring.setRandom(new SplittableRandom(seed));
+            System.out.println("Random seed: " + seed);
+        }
+        // The step state and the notes are recorded before the analysis and the strategy change them.
+        if (journal != null && ring != null) {
+            try {
+                journal.recordStep(Notes.getCurrentRound(), ring);
+                journal.recordNotes(Notes.getCurrentRound(), notes);
+            } catch (IOException e) {
+                System.out.println("The step could not be recorded in the game journal (see StackTrace).");
+                e.printStackTrace();
+            }
+        }
         Strategy strategy = null;
-        strategy = Analyzer.getStrategy(ring, notes);
+        strategy = Analyzer.getStrategy(ring, notes, previousRound);
         String stars = "****";
         System.out.println(stars + System.lineSeparator() + stars + System.lineSeparator() + stars);
         System.out.println("Executed strategy: "+ strategy.toString() + System.lineSeparator() +
                 "Expansion (" + notes.getRatiosThisRound()[0] +"), Consolidation (" + notes.getRatiosThisRound()[1] +
                 "), AttackMax (" + notes.getRatiosThisRound()[2] + "), AttackMin ("+ notes.getRatiosThisRound()[3] + "), Defensive (" + notes.getRatiosThisRound()[4] + ")");
         Output output = strategy.move(ring);
-        List<String> stringOutput;
-        if (output == null) {
-            stringOutput = new ArrayList<>();
-        } else {
-            stringOutput = output.getOutput(ring);
+        // The output is compacted to one line per node before the budget is checked and the move file is written.
+        Output move = output == null ? null : output.compact().getValidOutput(ring);
+        Util.writeMove(move, agentName);
+        if (journal != null && ring != null) {
+            try {
+                journal.recordTurn(Notes.getCurrentRound(), strategy.toString(), notes.getRatiosThisRound(), move, ring);
+            } catch (IOException e) {
+                System.out.println("The turn could not be recorded in the game journal (see StackTrace).");
+                e.printStackTrace();
+            }
         }
-        Util.writeMove(stringOutput, agentName);
-        Util.writeNotes(notes.toString(), agentName);
+        Util.writeNotes(notes, agentName);
         Util.writePrediction(ring);
         System.out.println("The program terminated successfully.");
         System.out.println(stars + System.lineSeparator() + stars + System.lineSeparator() + stars);
@@ -0,0 +1,496 @@
+package service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import model.*;
+
+/**
+ * Replays a game that was recorded in the {@link GameJournal}, so a game can be examined turn by turn without running the agent on the
+ * step files again.
+ * <p>
+ * When the replay is opened, only the record headers of the journal are read to build an index of the turns. The ring of a turn is
+ * rebuilt from the last keyframe before the turn and the deltas after it, i.e. from at most one keyframe and a few deltas, however long
+ * the game is. The rebuilt step state is kept, so going forward to the next turn only applies one more delta. The notes of a turn are
+ * stored in full in the journal and the ring as the agent left it (the prediction) as the changes of its moves.
+ * <p>
+ * With the ring, the notes and the prediction of the previous turn, the decision of a turn can be made again by
+ * {@link Analyzer#getStrategy(Ring, Notes, RingState)} and compared with the recorded decision.
+ */
+final class Replay implements Closeable {
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    /*
+     * Index of the turns in the order of the journal. For every turn: the round, the positions of its records (-1 if the turn has no
+     * such record) and the turn of the last keyframe at or before the turn.
+     */
+    private int turnCount;
+    private int[] rounds = new int[64];
+    private long[] steps = new long[64];
+    private long[] notes = new long[64];
+    private long[] decisions = new long[64];
+    private long[] results = new long[64];
+    private int[] keyframes = new int[64];
+    // Step state of the turn 'current' (-1 if there is none yet)
+    private int current = -1;
+    private byte[] owners;
+    private int[] fernies;
+    private int maxFerniesPerNode;
+    private int availableFernies;
+
+    private Replay(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Replays the game recorded in the journal of an agent.
+     * <p>
+     * Usage: {@code java service.Replay <agent name> [<round>]}. With a round, the ring, the notes and the recorded decision of that
+     * round are printed and the decision is made again. Without a round, the decision of every turn is made again, and the turns with
+     * a different decision are printed.
+     *
+     * @param args the agent name and optionally the round
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java service.Replay <agent name> [<round>]");
+            return;
+        }
+        try (Replay replay = open(Paths.get(args[0], GameJournal.FILE_NAME))) {
+            if (args.length > 1) {
+                int turn = replay.findTurn(Integer.parseInt(args[1]));
+                if (turn == -1) {
+                    System.out.println("Round " + args[1] + " is not in the game journal.");
+                    return;
+                }
+                replay.print(turn);
+                return;
+            }
+            int checked = 0;
+            int different = 0;
+            for (int turn = 0; turn < replay.getTurnCount(); turn++) {
+                Decision recorded = replay.getDecision(turn);
+                Decision decided = replay.decide(turn);
+                if (recorded == null || decided == null) {
+                    continue;
+                }
+                checked++;
+                if (!decided.isSameAs(recorded)) {
+                    different++;
+                    System.out.println("Round " + replay.getRound(turn) + ": recorded " + recorded + ", replayed " + decided);
+                }
+            }
+            System.out.println(checked + " of " + replay.getTurnCount() + " turns replayed, " + different + " with a different decision.");
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a valid round.");
+        } catch (IOException | InvalidStatusException e) {
+            System.out.println("The game journal could not be replayed (see StackTrace).");
+            e.printStackTrace();
+        }
+    }
+
+    // Prints the ring, the notes and the recorded and replayed decision of a turn.
+    private void print(int turn) throws IOException, InvalidStatusException {
+        Ring ring = getRing(turn);
+        System.out.println("Round " + getRound(turn) + ": " + ring.getNodeCount() + " nodes, mine " + ring.getNodeCount(Owner.MINE)
+                + " (" + ring.getFernies(Owner.MINE) + " fernies), theirs " + ring.getNodeCount(Owner.THEIRS) + " ("
+                + ring.getFernies(Owner.THEIRS) + " fernies), invisible " + ring.getNodeCount(Owner.UNKNOWN) + ", available fernies "
+                + ring.getAvailableFernies());
+        Notes turnNotes = getNotes(turn);
+        System.out.println(turnNotes == null ? "No notes recorded." : turnNotes.toString());
+        Decision recorded = getDecision(turn);
+        System.out.println("Recorded: " + (recorded == null ? "-" : recorded + ", " + recorded.getMove().size() + " lines"));
+        Decision decided = decide(turn);
+        System.out.println("Replayed: " + (decided == null ? "not possible without the notes and the previous turn" : decided));
+    }
+
+    /**
+     * Opens a journal file for the replay and builds the index of its turns. An incomplete record at the end of the file is ignored.
+     *
+     * @param file the journal file
+     * @return the replay
+     * @throws IOException            if the file can't be read
+     * @throws InvalidStatusException if the file is not a game journal
+     */
+    static Replay open(Path file) throws IOException, InvalidStatusException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        Replay replay = new Replay(channel);
+        try {
+            if (!GameJournal.hasHeader(channel)) {
+                throw new InvalidStatusException("The file " + file + " is not a game journal.");
+            }
+            replay.index();
+        } catch (IOException | InvalidStatusException e) {
+            channel.close();
+            throw e;
+        }
+        return replay;
+    }
+
+    // Reads the record headers and assigns the records to the turns. A turn starts with its step state record.
+    private void index() throws IOException {
+        ByteBuffer round = ByteBuffer.allocate(4);
+        long position = GameJournal.FILE_HEADER_SIZE;
+        for (long next; (next = GameJournal.nextRecord(channel, position)) != -1; position = next) {
+            byte type = GameJournal.typeOf(channel, position);
+            if (type == GameJournal.KEYFRAME || type == GameJournal.DELTA) {
+                if (type == GameJournal.DELTA && turnCount == 0) {
+                    continue; // a delta without a keyframe can't be rebuilt
+                }
+                if (turnCount == rounds.length) {
+                    grow();
+                }
+                int turn = turnCount++;
+                round.clear();
+                GameJournal.readFully(channel, round, position + GameJournal.RECORD_HEADER_SIZE);
+                rounds[turn] = round.getInt(0);
+                steps[turn] = position;
+                notes[turn] = -1;
+                decisions[turn] = -1;
+                results[turn] = -1;
+                keyframes[turn] = type == GameJournal.KEYFRAME ? turn : keyframes[turn - 1];
+            } else if (turnCount > 0) {
+                int turn = turnCount - 1;
+                if (type == GameJournal.NOTES) {
+                    notes[turn] = position;
+                } else if (type == GameJournal.TURN) {
+                    decisions[turn] = position;
+                } else if (type == GameJournal.RESULT) {
+                    results[turn] = position;
+                }
+            }
+        }
+    }
+
+    private void grow() {
+        int capacity = rounds.length * 2;
+        rounds = Arrays.copyOf(rounds, capacity);
+        steps = Arrays.copyOf(steps, capacity);
+        notes = Arrays.copyOf(notes, capacity);
+        decisions = Arrays.copyOf(decisions, capacity);
+        results = Arrays.copyOf(results, capacity);
+        keyframes = Arrays.copyOf(keyframes, capacity);
+    }
+
+    /**
+     * Returns the number of recorded turns.
+     *
+     * @return number of turns
+     */
+    int getTurnCount() {
+        return turnCount;
+    }
+
+    /**
+     * Returns the round of a turn.
+     *
+     * @param turn the index of the turn in the journal
+     * @return the round
+     */
+    int getRound(int turn) {
+        return rounds[turn];
+    }
+
+    /**
+     * Returns the last turn with a given round. If the journal contains several games, the round of the last game is found.
+     *
+     * @param round the round
+     * @return the index of the turn, or -1 if the round wasn't recorded
+     */
+    int findTurn(int round) {
+        for (int turn = turnCount - 1; turn >= 0; turn--) {
+            if (rounds[turn] == round) {
+                return turn;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Rebuilds the ring of a turn as the agent read it from the step file.
+     *
+     * @param turn the index of the turn in the journal
+     * @return the ring
+     * @throws IOException            if reading fails
+     * @throws InvalidStatusException if a record is damaged
+     */
+    Ring getRing(int turn) throws IOException, InvalidStatusException {
+        moveTo(turn);
+        return Ring.create(owners.clone(), fernies.clone(), maxFerniesPerNode, availableFernies, StorageLayout.fromSystemProperty());
+    }
+
+    /**
+     * Rebuilds the ring of a turn as the agent left it after its moves, i.e. the prediction that the next turn is compared with.
+     *
+     * @param turn the index of the turn in the journal
+     * @return the ring, or {@code null} if the changes of the moves weren't recorded
+     * @throws IOException            if reading fails
+     * @throws InvalidStatusException if a record is damaged
+     */
+    Ring getPrediction(int turn) throws IOException, InvalidStatusException {
+        if (results[turn] == -1) {
+            return null;
+        }
+        moveTo(turn);
+        ByteBuffer payload = read(results[turn]);
+        payload.getInt(); // round
+        int available = payload.getInt();
+        byte[] predictedOwners = owners.clone();
+        int[] predictedFernies = fernies.clone();
+        GameJournal.decodeDelta(payload, predictedOwners, predictedFernies);
+        return Ring.create(predictedOwners, predictedFernies, maxFerniesPerNode, available, StorageLayout.fromSystemProperty());
+    }
+
+    /**
+     * Returns the notes of a turn as the agent read them, before the analysis of the previous round. Like every {@link Notes} object,
+     * it sets the current round.
+     *
+     * @param turn the index of the turn in the journal
+     * @return the notes, or {@code null} if they weren't recorded
+     * @throws IOException            if reading fails
+     * @throws InvalidStatusException if the record is damaged
+     */
+    Notes getNotes(int turn) throws IOException, InvalidStatusException {
+        if (notes[turn] == -1) {
+            return null;
+        }
+        ByteBuffer payload = read(notes[turn]);
+        StrategyOpponent[] values = StrategyOpponent.values();
+        int round = payload.getInt();
+        StrategyOpponent[] strategyOpponent = { values[payload.get()], values[payload.get()] };
+        int totalAttacks = payload.getInt();
+        int lastRoundAttacks = payload.getInt();
+        int visibility = payload.getInt();
+        double blockedTotal = payload.getDouble();
+        double blockedLastRound = payload.getDouble();
+        double attackBuffer = payload.getDouble();
+        double[] ratios = new double[5];
+        for (int i = 0; i < ratios.length; i++) {
+            ratios[i] = payload.getDouble();
+        }
+        boolean analysed = payload.get() != 0;
+        List<Integer> attacks = GameJournal.getList(payload);
+        List<Integer> abandoned = GameJournal.getList(payload);
+        Notes turnNotes = new Notes(round, strategyOpponent, totalAttacks, lastRoundAttacks, visibility, attacks, abandoned, blockedTotal,
+                blockedLastRound, attackBuffer, ratios, analysed);
+        // Journals of older versions of the agent have no statistics, no threat scores and no beliefs.
+        if (payload.hasRemaining()) {
+            for (RollingWindow window : turnNotes.getStatistics()) {
+                int size = RingSnapshot.getVarint(payload);
+                for (int i = 0; i < size; i++) {
+                    window.add(RingSnapshot.getVarint(payload));
+                }
+            }
+        }
+        if (payload.hasRemaining()) {
+            ThreatMap threats = turnNotes.getThreats();
+            threats.reset(RingSnapshot.getVarint(payload));
+            int count = RingSnapshot.getVarint(payload);
+            int nodeNumber = 0;
+            for (int i = 0; i < count; i++) {
+                nodeNumber += RingSnapshot.getVarint(payload);
+                float threat = payload.getFloat();
+                if (nodeNumber < threats.getNodeCount()) {
+                    threats.setThreat(nodeNumber, threat);
+                }
+            }
+        }
+        if (payload.hasRemaining()) {
+            BeliefMap beliefs = turnNotes.getBeliefs();
+            beliefs.reset(RingSnapshot.getVarint(payload));
+            for (RollingWindow window : new RollingWindow[] { beliefs.getReinforcements(), beliefs.getOpponentNodes() }) {
+                int size = RingSnapshot.getVarint(payload);
+                for (int i = 0; i < size; i++) {
+                    window.add(RingSnapshot.getVarint(payload));
+                }
+            }
+            Owner[] owners = Owner.values();
+            int count = RingSnapshot.getVarint(payload);
+            int nodeNumber = 0;
+            for (int i = 0; i < count; i++) {
+                nodeNumber += RingSnapshot.getVarint(payload);
+                int owner = payload.get();
+                int fernieCount = RingSnapshot.getVarint(payload) - 1;
+                int seen = RingSnapshot.getVarint(payload);
+                if (nodeNumber < beliefs.getNodeCount() && owner >= 0 && owner < owners.length) {
+                    beliefs.setBelief(nodeNumber, owners[owner], fernieCount, seen);
+                }
+            }
+        }
+        return turnNotes;
+    }
+
+    /**
+     * Returns the decision that the agent recorded in a turn.
+     *
+     * @param turn the index of the turn in the journal
+     * @return the decision, or {@code null} if the turn wasn't finished
+     * @throws IOException            if reading fails
+     * @throws InvalidStatusException if the record is damaged
+     */
+    Decision getDecision(int turn) throws IOException, InvalidStatusException {
+        if (decisions[turn] == -1) {
+            return null;
+        }
+        ByteBuffer payload = read(decisions[turn]);
+        payload.getInt(); // round
+        byte[] name = new byte[payload.getShort()];
+        payload.get(name);
+        double[] ratios = new double[5];
+        for (int i = 0; i < ratios.length; i++) {
+            ratios[i] = payload.getDouble();
+        }
+        // The move was checked against the budget before it was recorded, so the budget of the output doesn't matter.
+        Output move = new Output(Integer.MAX_VALUE);
+        int lines = RingSnapshot.getVarint(payload);
+        int nodeNumber = 0;
+        for (int line = 0; line < lines; line++) {
+            nodeNumber += GameJournal.unzigzag(RingSnapshot.getVarint(payload));
+            int count = GameJournal.unzigzag(RingSnapshot.getVarint(payload));
+            if (count >= 0) {
+                move.upsert(nodeNumber, count);
+            } else {
+                move.remove(nodeNumber, -count);
+            }
+        }
+        return new Decision(new String(name, StandardCharsets.UTF_8), ratios, move);
+    }
+
+    /**
+     * Makes the decision of a turn again: the ring and the notes of the turn and the prediction of the previous turn are rebuilt and
+     * passed to {@link Analyzer#getStrategy(Ring, Notes, RingState)}. The strategy isn't executed, so the decision has no move.
+     *
+     * @param turn the index of the turn in the journal
+     * @return the decision, or {@code null} if the notes of the turn or the prediction of the previous round weren't recorded
+     * @throws IOException            if reading fails
+     * @throws InvalidStatusException if a record is damaged
+     */
+    Decision decide(int turn) throws IOException, InvalidStatusException {
+        RingState previousRound = null;
+        if (rounds[turn] != 1) {
+            // Without a prediction the analyzer would read the prediction file of the running game, so the turn isn't replayed.
+            if (turn == 0 || rounds[turn - 1] != rounds[turn] - 1 || results[turn - 1] == -1) {
+                return null;
+            }
+            previousRound = getPrediction(turn - 1);
+        }
+        Notes turnNotes = getNotes(turn);
+        if (turnNotes == null) {
+            return null;
+        }
+        Strategy strategy = Analyzer.getStrategy(getRing(turn), turnNotes, previousRound);
+        return new Decision(strategy.toString(), turnNotes.getRatiosThisRound().clone(), null);
+    }
+
+    /*
+     * Rebuilds the step state of a turn. If the cached state belongs to the same keyframe and isn't after the turn, only the deltas in
+     * between are applied; otherwise the state is rebuilt from the keyframe.
+     */
+    private void moveTo(int turn) throws IOException, InvalidStatusException {
+        if (current == turn) {
+            return;
+        }
+        int keyframe = keyframes[turn];
+        if (current == -1 || current > turn || keyframes[current] != keyframe) {
+            ByteBuffer payload = read(steps[keyframe]);
+            payload.getInt(); // round
+            int nodeCount = payload.getInt();
+            maxFerniesPerNode = payload.getInt();
+            availableFernies = payload.getInt();
+            owners = new byte[nodeCount];
+            fernies = new int[nodeCount];
+            GameJournal.decodeKeyframe(payload, owners, fernies);
+            current = keyframe;
+        }
+        while (current < turn) {
+            // The state is invalid until the delta has been applied completely.
+            int next = current + 1;
+            current = -1;
+            ByteBuffer payload = read(steps[next]);
+            payload.getInt(); // round
+            availableFernies = payload.getInt();
+            GameJournal.decodeDelta(payload, owners, fernies);
+            current = next;
+        }
+    }
+
+    // Reads the payload of a record and checks its checksum.
+    private ByteBuffer read(long position) throws IOException, InvalidStatusException {
+        ByteBuffer payload = GameJournal.readRecord(channel, position, crc);
+        if (payload == null) {
+            throw new InvalidStatusException("The record at position " + position + " of the game journal is damaged.");
+        }
+        return payload;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Decision of a turn: the strategy, the ratios of the mixed strategy and the move.
+     */
+    static final class Decision {
+        private final String strategy;
+        private final double[] ratios;
+        private final Output move;
+
+        private Decision(String strategy, double[] ratios, Output move) {
+            this.strategy = strategy;
+            this.ratios = ratios;
+            this.move = move;
+        }
+
+        /**
+         * Returns the name of the strategy.
+         *
+         * @return the name of the strategy
+         */
+        String getStrategy() {
+            return strategy;
+        }
+
+        /**
+         * Returns the ratios of the mixed strategy.
+         *
+         * @return the ratios
+         */
+        double[] getRatios() {
+            return ratios;
+        }
+
+        /**
+         * Returns the move.
+         *
+         * @return the move, or {@code null} if the decision was made again without executing the strategy
+         */
+        Output getMove() {
+            return move;
+        }
+
+        /**
+         * Returns whether the strategy and the ratios are the same as in another decision. The moves are not compared.
+         *
+         * @param other the other decision
+         * @return {@code true} if the strategy and the ratios are the same
+         */
+        boolean isSameAs(Decision other) {
+            return strategy.equals(other.strategy) && Arrays.equals(ratios, other.ratios);
+        }
+
+        @Override
+        public String toString() {
+            return strategy + " " + Arrays.toString(ratios);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import model.*;
+
+/**
+ * Reads and writes the ring image, a preprocessed step file that can be mapped into memory as an off-heap ring
+ * ({@link StorageLayout#OFF_HEAP}) without being parsed.
+ * <p>
+ * Layout:
+ * <ul>
+ * <li>header (big-endian, 32 bytes): magic number, format version (1 byte), 3 bytes padding, node count, maximum fernies per node,
+ * available fernies, 12 bytes padding</li>
+ * <li>one byte per node with the ordinal of its {@link Owner}, padded to a multiple of 4 bytes</li>
+ * <li>one little-endian int per node with the fernie count</li>
+ * </ul>
+ * Unlike {@link RingSnapshot}, the image has fixed-size fields and no checksum, since it is mapped directly and never read as a whole.
+ */
+final class RingImage {
+    /** File extension of ring images, which are stored next to the step files. */
+    static final String EXTENSION = ".ring";
+    private static final int MAGIC = 0x52575249; // "RWRI"
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private RingImage() {
+    }
+
+    /**
+     * Converts a step file into a ring image.
+     * <p>
+     * Usage: {@code java service.RingImage <step file> [<image file>]}. By default the image is written next to the step file with the
+     * extension {@value #EXTENSION} instead of {@code .txt}.
+     *
+     * @param args the step file and optionally the image file
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java service.RingImage <step file> [<image file>]");
+            return;
+        }
+        Path stepPath = Paths.get(args[0]);
+        Path imagePath = args.length > 1 ? Paths.get(args[1])
+                : stepPath.resolveSibling(stepPath.getFileName().toString().replaceFirst("\\.txt$", "") + EXTENSION);
+        try (FileChannel in = FileChannel.open(stepPath, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(imagePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            StepFileParser stepFile = StepFileParser.parse(in);
+            write(new Ring(stepFile.getOwners(), stepFile.getFernies(), stepFile.getMaxFerniesPerNode(), stepFile.getAvailableFernies()),
+                    out);
+            System.out.println("Wrote the ring image " + imagePath + ".");
+        } catch (IOException | InvalidStatusException e) {
+            System.out.println("The ring image could not be created (see StackTrace).");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the image of a given ring into a channel. The image is encoded in chunks through one direct buffer.
+     *
+     * @param ring    the ring
+     * @param channel the channel
+     * @throws IOException if writing fails
+     */
+    static void write(Ring ring, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        int nodeCount = ring.getNodeCount();
+        buffer.putInt(MAGIC).put(VERSION).put(new byte[3]).putInt(nodeCount).putInt(ring.getMaxFerniesPerNode())
+                .putInt(ring.getAvailableFernies()).put(new byte[HEADER_SIZE - 20]);
+        for (int i = 0; i < nodeCount; i++) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer, channel);
+            }
+            buffer.put((byte) ring.getOwner(i).ordinal());
+        }
+        for (int i = nodeCount; i % 4 != 0; i++) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer, channel);
+            }
+            buffer.put((byte) 0);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < nodeCount; i++) {
+            if (buffer.remaining() < 4) {
+                flush(buffer, channel);
+            }
+            buffer.putInt(ring.getFernieCount(i));
+        }
+        flush(buffer, channel);
+    }
+
+    /**
+     * Maps a ring image as an off-heap ring. The channel must be open for reading and writing (the file itself is never changed) and
+     * can be closed afterwards.
+     *
+     * @param channel the channel
+     * @return the ring
+     * @throws IOException            if the file can't be mapped
+     * @throws InvalidStatusException if the file is not a ring image or is truncated
+     */
+    static Ring map(FileChannel channel) throws IOException, InvalidStatusException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // reads until the header is complete or the file ends
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+            throw new InvalidStatusException("The file is not a ring image of version " + VERSION + ".");
+        }
+        int nodeCount = header.getInt(8);
+        int maxFerniesPerNode = header.getInt(12);
+        int availableFernies = header.getInt(16);
+        if (nodeCount <= 0 || channel.size() < HEADER_SIZE + ((nodeCount + 3L) & ~3L) + 4L * nodeCount) {
+            throw new InvalidStatusException("The ring image has an invalid node count (" + nodeCount + ").");
+        }
+        return Ring.map(channel, HEADER_SIZE, nodeCount, maxFerniesPerNode, availableFernies);
+    }
+
+    // Writes the content of the buffer into the channel.
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
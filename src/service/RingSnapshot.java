@@ -0,0 +1,157 @@
+package service;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
+
+import model.*;
+
+/**
+ * Reads and writes the binary snapshot of a ring that is used for the prediction file.
+ * <p>
+ * Layout (all numbers big-endian):
+ * <ul>
+ * <li>header: magic number, format version (1 byte), node count, maximum fernies per node, available fernies</li>
+ * <li>one byte per node with the ordinal of its {@link Owner}</li>
+ * <li>one unsigned varint per node with the fernie count + 1 (so that the -1 of invisible nodes can be stored)</li>
+ * <li>CRC32 checksum of everything above</li>
+ * </ul>
+ * The fernie counts are small in most games, so a node usually takes 2 bytes.
+ */
+final class RingSnapshot {
+    private static final int MAGIC = 0x52575053; // "RWPS"
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 17;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int OWNERS = Owner.values().length;
+
+    private RingSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of a given ring into a channel. The snapshot is encoded in chunks through one direct buffer, so no copy of the
+     * whole ring is created on the heap.
+     *
+     * @param ring    the ring
+     * @param channel the channel
+     * @throws IOException if writing fails
+     */
+    static void write(Ring ring, WritableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        int nodeCount = ring.getNodeCount();
+        buffer.putInt(MAGIC).put(VERSION).putInt(nodeCount).putInt(ring.getMaxFerniesPerNode()).putInt(ring.getAvailableFernies());
+        for (int i = 0; i < nodeCount; i++) {
+            if (!buffer.hasRemaining()) {
+                flush(buffer, channel, crc);
+            }
+            buffer.put((byte) ring.getOwner(i).ordinal());
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            if (buffer.remaining() < 5) {
+                flush(buffer, channel, crc);
+            }
+            putVarint(buffer, ring.getFernieCount(i) + 1);
+        }
+        flush(buffer, channel, crc);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Reads a snapshot from a channel. The file is mapped into memory and decoded directly from the mapped buffer.
+     *
+     * @param channel the channel
+     * @return the ring stored in the snapshot
+     * @throws IOException            if reading fails
+     * @throws InvalidStatusException if the snapshot is damaged or has an unknown format
+     */
+    static Ring read(FileChannel channel) throws IOException, InvalidStatusException {
+        long size = channel.size();
+        if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+            throw new InvalidStatusException("The snapshot has an invalid size (" + size + " bytes).");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION) {
+            throw new InvalidStatusException("The file is not a ring snapshot of version " + VERSION + ".");
+        }
+        CRC32 crc = new CRC32();
+        buffer.limit((int) size - 4);
+        crc.update(buffer);
+        buffer.limit((int) size);
+        if ((int) crc.getValue() != buffer.getInt((int) size - 4)) {
+            throw new InvalidStatusException("The checksum of the snapshot doesn't match.");
+        }
+        int nodeCount = buffer.getInt(5);
+        int maxFerniesPerNode = buffer.getInt(9);
+        int availableFernies = buffer.getInt(13);
+        if (nodeCount <= 0 || HEADER_SIZE + 2L * nodeCount + 4 > size) {
+            throw new InvalidStatusException("The snapshot has an invalid node count (" + nodeCount + ").");
+        }
+        byte[] owners = new byte[nodeCount];
+        int[] fernies = new int[nodeCount];
+        buffer.get(HEADER_SIZE, owners);
+        buffer.position(HEADER_SIZE + nodeCount);
+        buffer.limit((int) size - 4); // the fernie counts must not run into the checksum
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                if (owners[i] < 0 || owners[i] >= OWNERS) {
+                    throw new InvalidStatusException("The snapshot has an invalid owner (" + owners[i] + ") for node " + i + ".");
+                }
+                fernies[i] = getVarint(buffer) - 1;
+            }
+        } catch (BufferUnderflowException e) {
+            throw new InvalidStatusException("The fernie counts of the snapshot are incomplete.");
+        }
+        return Ring.create(owners, fernies, maxFerniesPerNode, availableFernies, StorageLayout.fromSystemProperty());
+    }
+
+    // Writes the content of the buffer into the channel and adds it to the checksum.
+    private static void flush(ByteBuffer buffer, WritableByteChannel channel, CRC32 crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes an unsigned varint (7 bits per byte, the highest bit marks that another byte follows).
+     *
+     * @param buffer the buffer
+     * @param value  the value, interpreted as unsigned
+     */
+    static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned varint at the current position of the buffer.
+     *
+     * @param buffer the buffer
+     * @return the value
+     */
+    static int getVarint(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0 && shift < 35);
+        return value;
+    }
+}
@@ -0,0 +1,304 @@
+package service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import model.*;
+
+/**
+ * Decodes a step file in a single pass over its bytes.
+ * <p>
+ * The file is mapped into memory through a {@link FileChannel}, and the fernie counts of line 1 and the owner letters of line 2 are
+ * decoded directly into primitive arrays without creating intermediate Strings. All consistency checks that were previously carried
+ * out on the split lines are carried out in the same pass. If a check fails, the {@link InvalidStatusException} reports the byte offset
+ * of the offending element.
+ */
+final class StepFileParser {
+    /*
+     * Files larger than this are mapped in several windows, since a MappedByteBuffer cannot be larger than Integer.MAX_VALUE bytes. The
+     * parser keeps its whole state in fields, so a token may be split across two windows.
+     */
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final byte MINE = (byte) Owner.MINE.ordinal();
+    private static final byte THEIRS = (byte) Owner.THEIRS.ordinal();
+    private static final byte UNCONTROLLED = (byte) Owner.UNCONTROLLED.ordinal();
+    private static final byte UNKNOWN = (byte) Owner.UNKNOWN.ordinal();
+
+    private int line; // index of the line that is currently read (0 = line 1)
+    private long offset; // byte offset of the byte that is currently read
+    private boolean lastWasCR; // whether the previous byte was a '\r', in which case a following '\n' belongs to the same line break
+    private boolean moreLines; // whether the file has more than 4 lines
+    private boolean lineHasContent; // whether any byte other than a line break was read on the current line
+
+    // State of the token that is currently read
+    private long tokenStart;
+    private int tokenLength;
+    private byte tokenFirst;
+    private long tokenValue;
+    private boolean tokenNegative;
+    private boolean tokenInvalid;
+    /*
+     * Empty tokens at the end of a line are ignored (just like String.split does), therefore they are only counted and processed once
+     * another non-empty token follows on the same line.
+     */
+    private int pendingEmpty;
+    private long pendingEmptyOffset;
+
+    private int[] fernies = new int[1024];
+    private byte[] owners;
+    private int nodeCount; // number of elements in line 1
+    private int ownerCount; // number of elements in line 2 read so far
+    private int availableFernies;
+    private int maxFerniesPerNode;
+
+    /**
+     * Parses the step file that can be read through a given channel.
+     *
+     * @param channel the channel
+     * @return the parser holding the decoded step file
+     * @throws IOException            if the file could not be read
+     * @throws InvalidStatusException if the step file is invalid
+     */
+    static StepFileParser parse(FileChannel channel) throws IOException, InvalidStatusException {
+        StepFileParser parser = new StepFileParser();
+        long size = channel.size();
+        for (long position = 0; position < size && !parser.moreLines; position += WINDOW_SIZE) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            int limit = buffer.limit();
+            for (int i = 0; i < limit && !parser.moreLines; i++) {
+                parser.accept(buffer.get(i));
+            }
+        }
+        parser.finish();
+        return parser;
+    }
+
+    /**
+     * Returns the fernie counts of line 1, one element per node.
+     *
+     * @return fernie counts
+     */
+    int[] getFernies() {
+        return fernies;
+    }
+
+    /**
+     * Returns the owners of line 2, one element per node, encoded by the ordinal of the {@link Owner}.
+     *
+     * @return owners
+     */
+    byte[] getOwners() {
+        return owners;
+    }
+
+    /**
+     * Returns the number of new fernies in line 3.
+     *
+     * @return available fernies
+     */
+    int getAvailableFernies() {
+        return availableFernies;
+    }
+
+    /**
+     * Returns the maximum number of fernies per node in line 4.
+     *
+     * @return maximum number of fernies per node
+     */
+    int getMaxFerniesPerNode() {
+        return maxFerniesPerNode;
+    }
+
+    /**
+     * Returns whether the step file has more than 4 lines.
+     *
+     * @return {@code true} if there are more than 4 lines, {@code false} otherwise
+     */
+    boolean hasMoreLines() {
+        return moreLines;
+    }
+
+    // Processes one byte of the file.
+    private void accept(byte b) throws InvalidStatusException {
+        // The '\n' of a "\r\n" line break still belongs to the line before, even to the 4th line.
+        if (b == '\n' && lastWasCR) {
+            lastWasCR = false;
+            offset++;
+            return;
+        }
+        if (line == 4) {
+            // 1st check: everything after the 4th line is ignored, however, the information is kept so a message can be displayed.
+            moreLines = true;
+            return;
+        }
+        lastWasCR = b == '\r';
+        if (b == '\n' || b == '\r') {
+            endToken(true);
+            endLine();
+            line++;
+        } else if (b == ',' && line < 2) {
+            lineHasContent = true;
+            endToken(false);
+        } else {
+            lineHasContent = true;
+            if (tokenLength == 0) {
+                tokenStart = offset;
+                tokenFirst = b;
+            }
+            tokenLength++;
+            if (line != 1) {
+                readDigit(b);
+            }
+        }
+        offset++;
+    }
+
+    // Adds a byte to the number that is currently read. The accepted format is the same as that of Integer.parseInt.
+    private void readDigit(byte b) {
+        if (tokenLength == 1 && (b == '-' || b == '+')) {
+            tokenNegative = b == '-';
+        } else if (b >= '0' && b <= '9') {
+            tokenValue = tokenValue * 10 + (b - '0');
+            if (tokenValue > (long) Integer.MAX_VALUE + 1) {
+                tokenInvalid = true;
+                tokenValue = 0;
+            }
+        } else {
+            tokenInvalid = true;
+        }
+    }
+
+    // Completes the token that is currently read.
+    private void endToken(boolean endOfLine) throws InvalidStatusException {
+        if (tokenLength == 0) {
+            if (line >= 2) {
+                System.out.println(3);
+                throw new InvalidStatusException("Number parsing for amount of fernies in line " + (line + 1)
+                        + " failed (line is empty, byte offset " + offset + ").");
+            }
+            if (!endOfLine && pendingEmpty++ == 0) {
+                pendingEmptyOffset = offset;
+            }
+            return;
+        }
+        if (line < 2) {
+            // Empty tokens followed by a non-empty token are real elements of the line.
+            while (pendingEmpty > 0) {
+                pendingEmpty--;
+                if (line == 0) {
+                    System.out.println(3);
+                    throw new InvalidStatusException(
+                            "Number parsing for amount of fernies in line 1 failed (empty element at byte offset " + pendingEmptyOffset + ").");
+                }
+                addOwner((byte) 0, 0, pendingEmptyOffset);
+            }
+        }
+        switch (line) {
+        case 0:
+            if (nodeCount == fernies.length) {
+                fernies = Arrays.copyOf(fernies, fernies.length * 2);
+            }
+            fernies[nodeCount++] = tokenNumber(1);
+            break;
+        case 1:
+            addOwner(tokenFirst, tokenLength, tokenStart);
+            break;
+        case 2:
+            availableFernies = tokenNumber(3);
+            break;
+        default:
+            maxFerniesPerNode = tokenNumber(4);
+        }
+        tokenLength = 0;
+        tokenValue = 0;
+        tokenNegative = false;
+        tokenInvalid = false;
+    }
+
+    /*
+     * 3rd check: if parsing the elements in line 1, 3 or 4 fails, something is wrong.
+     */
+    private int tokenNumber(int lineNumber) throws InvalidStatusException {
+        long value = tokenNegative ? -tokenValue : tokenValue;
+        boolean digits = tokenLength > 1 || (tokenFirst != '-' && tokenFirst != '+');
+        if (tokenInvalid || !digits || value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            System.out.println(3);
+            throw new InvalidStatusException("Number parsing for amount of fernies in line " + lineNumber + " failed at byte offset "
+                    + tokenStart + ".");
+        }
+        return (int) value;
+    }
+
+    // Decodes the owner letter of one element in line 2 and checks it against the fernie count of the same node in line 1.
+    private void addOwner(byte letter, int length, long start) throws InvalidStatusException {
+        /*
+         * 2nd check: if the number of elements in the first and the second line are different, something is wrong.
+         */
+        if (ownerCount == nodeCount) {
+            System.out.println(2);
+            throw new InvalidStatusException("Line 1 and 2 have a different number of elements (line 2 has more, byte offset " + start + ").");
+        }
+        byte owner = THEIRS;
+        if (length == 1) {
+            switch (letter) {
+            case 'Y': owner = MINE; break;
+            case 'N': owner = UNCONTROLLED; break;
+            case 'U': owner = UNKNOWN; break;
+            default: owner = THEIRS;
+            }
+        }
+        int i = ownerCount;
+        int count = fernies[i];
+        /*
+         * 5th check: If the visibility status in line 1 and 2 don't match, something is wrong.
+         */
+        if ((count == -1) != (owner == UNKNOWN)) {
+            System.out.println(5);
+            throw new InvalidStatusException("For node " + i + " (byte offset " + start
+                    + ") the visibility status in line 1 and 2 don't match. (Line 1 has -1 and line 2 doesn't have U or the other way around.)");
+        }
+        // 6th check: if a node status is uncontrolled and the fernie count is != 0, something is wrong.
+        if ((count == 0) != (owner == UNCONTROLLED)) {
+            System.out.println(6);
+            throw new InvalidStatusException("For node " + i + " (byte offset " + start
+                    + ") the uncontrolled status of line 1 and 2 don't match. (Line 1 has 0 and line doesn't have N, or the other way around.)");
+        }
+        owners[ownerCount++] = owner;
+    }
+
+    // Completes the line that is currently read.
+    private void endLine() throws InvalidStatusException {
+        pendingEmpty = 0;
+        lineHasContent = false;
+        if (line == 0) {
+            // 4th check: if the node count is 0, something is wrong.
+            if (nodeCount == 0) {
+                System.out.println(4);
+                throw new InvalidStatusException("There are no nodes in the step file.");
+            }
+            owners = new byte[nodeCount];
+        } else if (line == 1 && ownerCount != nodeCount) {
+            System.out.println(2);
+            throw new InvalidStatusException("Line 1 and 2 have a different number of elements (line 2 ends at byte offset " + offset + ").");
+        }
+    }
+
+    // Completes the last line if the file doesn't end with a line break and checks whether all lines were present.
+    private void finish() throws InvalidStatusException {
+        if (line < 4 && lineHasContent) {
+            endToken(true);
+            endLine();
+            line++;
+        }
+        if (line < 4) {
+            System.out.println(3);
+            throw new InvalidStatusException("The step file ends after line " + line + " (byte offset " + offset + "). Line "
+                    + (line + 1) + " is missing.");
+        }
+        if (fernies.length != nodeCount) {
+            fernies = Arrays.copyOf(fernies, nodeCount);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package service;
 
+import java.util.*;
+
 import model.*;
 
 /**
@@ -7,6 +9,8 @@ import model.*;
  * and some utility methods (static).
  */
 public abstract class Strategy {
+    /** Maximum number of threatened nodes that are reinforced by {@link #reinforceThreatened(Ring, Output, int)}. */
+    static final int THREATENED_NODES = 5;
     int ferniesForThisStrategy;
     Notes notes;
 
@@ -42,28 +46,120 @@ public abstract class Strategy {
          * First the unused fernies are distributed on the uncontrolled nodes, since
          * this is the most efficient (bonus fernies per occupied node).
          */
-        int availableFernies;
         output = new Expansion(notes).move(ring, output, 1);
         /*
          * If there are no more uncontrolled nodes, the functions proceeds with filling
          * up the nodes the agent owns, in order to secure them against potential
-         * attacks.
+         * attacks. The nodes with the fewest fernies are filled up first, all of them
+         * in one batch.
          */
-        while (!ring.isRingFull(Owner.MINE) && ring.getAvailableFernies() > 0) {
-            Node node = ring.getMinNode(Owner.MINE);
-            availableFernies = ring.getAvailableFernies();
-            try {
-                ring.addFernies(node.getNodeNumber(), availableFernies);
-                output.upsert(node.getNodeNumber(), availableFernies);
-            } catch (FernieException e) {
-                output.upsert(node.getNodeNumber(), e.getFernies());
-            } catch (MoveException e) {
-                System.out.println("Node number " + node.getNodeNumber() + ": " + e.getMessage());
-                e.printStackTrace();
+        if (ring.getAvailableFernies() <= 0) {
+            return;
+        }
+        PriorityQueue<Node> mine = new PriorityQueue<>(Comparator.comparingInt(Node::getFernieCount));
+        mine.addAll(ring.getNodes(Owner.MINE));
+        int[] nodes = new int[mine.size()];
+        int[] fernies = new int[mine.size()];
+        int moves = 0;
+        int availableFernies = ring.getAvailableFernies();
+        while (availableFernies > 0 && !mine.isEmpty()) {
+            Node node = mine.poll();
+            int free = Math.min(ring.getMaxFerniesPerNode() - node.getFernieCount(), availableFernies);
+            if (free > 0) {
+                nodes[moves] = node.getNodeNumber();
+                fernies[moves++] = free;
+                availableFernies -= free;
+            }
+        }
+        applyMoves(ring, output, Arrays.copyOf(nodes, moves), Arrays.copyOf(fernies, moves));
+    }
+
+    /**
+     * Places fernies evenly on the agent's nodes that the opponent has attacked most in the last rounds (see {@link ThreatMap}),
+     * at most {@value #THREATENED_NODES} nodes.
+     * 
+     * @param ring    the ring
+     * @param output  the output
+     * @param fernies the number of fernies to be placed
+     * @return the number of fernies actually placed
+     */
+    int reinforceThreatened(Ring ring, Output output, int fernies) {
+        int[] threatened = notes.getThreats().getMostThreatened(ring, Owner.MINE, THREATENED_NODES);
+        if (threatened.length == 0) {
+            return 0;
+        }
+        int ferniesPerNode = fernies / threatened.length;
+        int placed = 0;
+        for (int nodeNumber : threatened) {
+            int result = addFernies(ring, output, nodeNumber, ferniesPerNode);
+            if (result > 0) {
+                placed += result;
+            }
+        }
+        return placed;
+    }
+
+    /**
+     * Places fernies on a node and adds the number of fernies that were actually placed to the output. If the move is invalid, the
+     * reason is printed and the ring and output remain unchanged.
+     * 
+     * @param ring       the ring
+     * @param output     the output
+     * @param nodeNumber the node number
+     * @param fernies    the number of fernies to be placed
+     * @return the number of fernies actually placed, or a negative {@link MoveResult} code
+     */
+    int addFernies(Ring ring, Output output, int nodeNumber, int fernies) {
+        int result = ring.tryAddFernies(nodeNumber, fernies);
+        record(output, nodeNumber, result);
+        return result;
+    }
+
+    /**
+     * Attacks an opponent node and adds the number of fernies that were actually used to the output. If the move is invalid, the
+     * reason is printed and the ring and output remain unchanged.
+     * 
+     * @param ring       the ring
+     * @param output     the output
+     * @param nodeNumber the node number
+     * @param fernies    the number of fernies to attack with
+     * @return the number of fernies actually used, or a negative {@link MoveResult} code
+     */
+    int attack(Ring ring, Output output, int nodeNumber, int fernies) {
+        int result = ring.tryAttack(nodeNumber, fernies);
+        record(output, nodeNumber, result);
+        return result;
+    }
+
+    /**
+     * Carries out a batch of moves in one pass (see {@link Ring#applyMoves(int[], int[])}) and adds the number of fernies that were
+     * actually placed or removed to the output. Invalid moves are reported like in {@link #addFernies(Ring, Output, int, int)}.
+     * 
+     * @param ring    the ring
+     * @param output  the output
+     * @param nodes   the node numbers
+     * @param fernies the number of fernies per move, negative for removals
+     */
+    void applyMoves(Ring ring, Output output, int[] nodes, int[] fernies) {
+        int[] results = ring.applyMoves(nodes, fernies);
+        for (int i = 0; i < nodes.length; i++) {
+            if (fernies[i] < 0 && results[i] >= 0) {
+                output.remove(nodes[i], results[i]);
+            } else {
+                record(output, nodes[i], results[i]);
             }
         }
     }
 
+    // Adds the result of a placement to the output, or prints the reason why it failed.
+    private static void record(Output output, int nodeNumber, int result) {
+        if (result >= 0) {
+            output.upsert(nodeNumber, result);
+        } else {
+            System.out.println("Node number " + nodeNumber + ": " + MoveResult.getMessage(result, nodeNumber));
+        }
+    }
+
     /**
      * Leaves on every node owned by the agent only 1 fernie (to hold the node for
      * obtaining the bonus for nodes controlled) and removes the remaining fernies
@@ -75,23 +171,19 @@ public abstract class Strategy {
     public void removeUnnecessary(Ring ring, Output output) {
         for (Node node : ring.getNodes(Owner.MINE)) {
             int errorCount = 0;
-            if (errorCount > ring.getNodes(Owner.MINE).size() / 2) {
+            if (errorCount > ring.getNodeCount(Owner.MINE) / 2) {
                 System.out.println("Something has gone very wrong in the removeUnnecessary method. The method"
                         + "was unsuccessful in more than half the cases.");
             }
-            try {
-                if (node.getFernieCount() > 1) {
-                    int temp = node.getFernieCount() - 1;
-                    if (temp > 0) {
-                        ring.removeFernies(node.getNodeNumber(), temp);
-                        output.remove(node.getNodeNumber(), temp);
-                    }
+            if (node.getFernieCount() > 1) {
+                int temp = node.getFernieCount() - 1;
+                if (ring.tryRemoveFernies(node.getNodeNumber(), temp) >= 0) {
+                    output.remove(node.getNodeNumber(), temp);
+                } else {
+                    // If removing fernies from one node was unsuccessful, the methode shall simply
+                    // contrinue and remove the fernies from the other nodes.
+                    errorCount++;
                 }
-            } catch (MoveException e) {
-                // If removing fernies from one node was unsuccessful, the methode shall simply
-                // contrinue and remove the fernies from the other nodes.
-                errorCount++;
-                continue;
             }
         }
     }
@@ -104,20 +196,18 @@ public abstract class Strategy {
     public void removeAll(Ring ring, Output output) {
         for (Node node : ring.getNodes(Owner.MINE)) {
             int errorCount = 0;
-            if (errorCount > ring.getNodes(Owner.MINE).size() / 2) {
+            if (errorCount > ring.getNodeCount(Owner.MINE) / 2) {
                 System.out.println("Something has gone very wrong in the removeAll method. The method"
                         + "was unsuccessful in more than half the cases.");
             }
-            try {
-                int temp = node.getFernieCount();
-                ring.removeFernies(node.getNodeNumber(), temp);
+            int temp = node.getFernieCount();
+            if (ring.tryRemoveFernies(node.getNodeNumber(), temp) >= 0) {
                 output.remove(node.getNodeNumber(), temp);
                 notes.addAbandoned(node.getNodeNumber());
-            } catch (MoveException e) {
+            } else {
                 // If removing fernies from one node was unsuccessful, the methode shall simply
                 // continue and remove the fernies from the other nodes.
                 errorCount++;
-                continue;
             }
         }
     }
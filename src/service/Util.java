@@ -1,6 +1,14 @@
 package service;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -10,10 +18,18 @@ import model.*;
  * Utility class with static methods for reading and writing files.
  */
 public class Util {
+    private static final String PREDICTION_FILE = "prediction.bin";
+    private static final String NOTES_TEXT_FILE = "notes.txt";
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final ByteBuffer MOVE_BUFFER = ByteBuffer.allocateDirect(1 << 16);
     private static String agentNamePerm;
 
     /**
      * Reads the step file with a given number.
+     * <p>
+     * The step file is decoded in a single pass by {@link StepFileParser}, which reads the memory-mapped file and carries out all
+     * consistency checks on the way. The ring is created with the storage layout selected by {@link StorageLayout#fromSystemProperty()}.
+     * With the layout {@link StorageLayout#OFF_HEAP}, a ring image of the step ({@link RingImage}) is mapped instead if there is one.
      * 
      * @param agentName name of the agent (directory)
      * @param step      step number
@@ -25,15 +41,22 @@ public class Util {
         if (step == null) {
             return null;
         }
-        String path = agentName + File.separator + step + ".txt";
-        String[] input = new String[5]; //Input array has one additional length in order to check if the input file was longer than expected.
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            int i = 0;
-            String line;
-            while ((line = br.readLine()) != null) {
-                input[i++] = line;
+        if (StorageLayout.fromSystemProperty() == StorageLayout.OFF_HEAP) {
+            // A preprocessed step file (see RingImage) is mapped directly instead of being parsed.
+            Path imagePath = Paths.get(agentName, step + RingImage.EXTENSION);
+            if (Files.exists(imagePath)) {
+                try (FileChannel channel = FileChannel.open(imagePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    return RingImage.map(channel);
+                } catch (IOException | InvalidStatusException e) {
+                    System.out.println("The ring image of step #" + step + " could not be mapped. The step file is read instead.");
+                }
             }
-        } catch (FileNotFoundException e) {
+        }
+        Path path = Paths.get(agentName, step + ".txt");
+        StepFileParser stepFile;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            stepFile = StepFileParser.parse(channel);
+        } catch (NoSuchFileException e) {
             System.out.println("The step file #" + step + " was not found. An empty move file will be created.");
             return null;
         } catch (IOException e) {
@@ -41,68 +64,15 @@ public class Util {
             return null;
         }
         /*
-         * 1st check: if the step file has more than 4 lines, a message is displayed,
-         * however, if the first 4 lines are correct, the program proceeds (see Moodle
-         * answer by Andrea Frank).
+         * If the step file has more than 4 lines, a message is displayed, however, if the first 4 lines are correct, the programm proceeds
+         * (see Moodle answer by Andrea Frank).
          */
-        if (input[4] != null) {
+        if (stepFile.hasMoreLines()) {
             System.out.println(
                     "Step file has more than 4 lines. The programm continues, and tries to parse the first 4 lines.");
         }
-        String[] line1String = input[0].split(",");
-        String[] line2 = input[1].split(",");
-        /*
-         * 2nd check: if the number of elements in the first and the second line are
-         * different, something is wrong.
-         */
-        if (line1String.length != line2.length) {
-            System.out.println(2);
-            throw new InvalidStatusException("Line 1 and 2 have a different number of elements.");
-        }
-        int numberNodes = line1String.length;
-        int[] line1Int = new int[numberNodes];
-        int availableFernies;
-        int maxFerniesPerNode;
-        /*
-         * 3rd check: if parsing the elements in line 1, 3 or 4 causes a
-         * NumberFormatException something is wrong.
-         */
-        try {
-            availableFernies = Integer.parseInt(input[2]);
-            maxFerniesPerNode = Integer.parseInt(input[3]);
-            for (int i = 0; i < numberNodes; i++) {
-                line1Int[i] = Integer.parseInt(line1String[i]);
-            }
-        } catch (NumberFormatException e) {
-            System.out.println(3);
-            throw new InvalidStatusException("Number parsing for amount of fernies in line 1, 3 or 4 failed.");
-        }
-        // 4th check: if the node count is 0, something is wrong.
-        if (numberNodes == 0) {
-            System.out.println(4);
-            throw new InvalidStatusException("There are no nodes in the step file.");
-        }
-        Node[] nodeList = new Node[numberNodes];
-        for (int i = 0; i < numberNodes; i++) {
-            /*
-             * 5th check: If the visibility status in line 1 and 2 don't match, something is
-             * wrong.
-             */
-            if ((line1Int[i] == -1 && !line2[i].equals("U")) || (line1Int[i] != -1 && line2[i].equals("U"))) {
-                System.out.println(5);
-                throw new InvalidStatusException("For node " + i
-                        + " the visibility status in line 1 and 2 don't match. (Line 1 has -1 and line 2 doesn't have U or the other way around.)");
-            }
-            // 6th check: if a node status is uncontrolled and the fernie count is != 0,
-            // something is wrong.
-            if ((line1Int[i] == 0 && !line2[i].equals("N")) || (line1Int[i] != 0 && line2[i].equals("N"))) {
-                System.out.println(6);
-                throw new InvalidStatusException("For node " + i
-                        + " the uncontrolled status of line 1 and 2 don't match. (Line 1 has 0 and line doesn't have N, or the other way around.)");
-            }
-            nodeList[i] = new Node(i, line2[i], line1Int[i]);
-        }
-        return new Ring(nodeList, maxFerniesPerNode, availableFernies);
+        return Ring.create(stepFile.getOwners(), stepFile.getFernies(), stepFile.getMaxFerniesPerNode(), stepFile.getAvailableFernies(),
+                StorageLayout.fromSystemProperty());
     }
 
     /**
@@ -118,68 +88,162 @@ public class Util {
 
     /**
      * Writes the move file into the agent's directory.
+     * <p>
+     * The lines are encoded directly into one direct buffer that is reused for every move file (the daemon writes one per round), so
+     * no String is created per line.
      * 
-     * @param output    output String list
+     * @param output    output, or {@code null} for an empty move file
      * @param agentName agent name (name of directory)
      */
-    public static void writeMove(List<String> output, String agentName) {
-        File move = new File(agentName, "move.txt");
-        
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(move))) {
-            /*
-             * in order for the move file not to end with an empty line, I have extracted
-             * the first line from the for loop. The loop then starts with a line break.
-             */
-            if (output != null && !output.isEmpty()) {
-                bw.write(output.get(0));
-                if (output.size() > 1) {
-                    for (int i = 1; i < output.size(); i++) {
-                        bw.newLine();
-                        bw.write(output.get(i));
-                    }
+    public static void writeMove(Output output, String agentName) {
+        Path move = Paths.get(agentName, "move.txt");
+        try (FileChannel channel = FileChannel.open(move, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = MOVE_BUFFER;
+            buffer.clear();
+            int lines = output == null ? 0 : output.size();
+            for (int i = 0; i < lines; i++) {
+                // One line has at most 2 * 11 characters for the numbers, the comma and the line separator.
+                if (buffer.remaining() < 23 + LINE_SEPARATOR.length) {
+                    write(buffer, channel);
+                }
+                /*
+                 * in order for the move file not to end with an empty line, the line break is written before every line except the
+                 * first.
+                 */
+                if (i > 0) {
+                    buffer.put(LINE_SEPARATOR);
                 }
+                putDecimal(buffer, output.getNodeNumber(i));
+                buffer.put((byte) ',');
+                putDecimal(buffer, output.getFernies(i));
             }
+            write(buffer, channel);
         } catch (IOException e) {
             System.out.println("The move file could not be created (see StackTrace). The program terminates now.");
             e.printStackTrace();
             System.exit(0);
         }
     }
+
+    // Writes the content of the buffer into the channel and clears the buffer.
+    private static void write(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Writes the decimal digits of a number into the buffer.
+    private static void putDecimal(ByteBuffer buffer, int value) {
+        long v = value;
+        if (v < 0) {
+            buffer.put((byte) '-');
+            v = -v;
+        }
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' + v % 10));
+            v /= 10;
+        } while (v != 0);
+        // The digits were written from the lowest to the highest, so they are reversed in place.
+        for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+            byte b = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, b);
+        }
+    }
     
     /**
-     * Writes a prediction step file into the agents directory with the state of the ring as the agents leaves it in the current round.
+     * Writes a prediction file into the agents directory with the state of the ring as the agents leaves it in the current round.
+     * <p>
+     * The prediction is stored as a binary snapshot ({@link RingSnapshot}) in {@code prediction.bin}. If the system property
+     * {@code ringwars.predictionText} is set to {@code true}, the ring is additionally exported in the format of a step file to
+     * {@code prediction.txt} for debugging.
      * @param ring the ring after the agent's moves have been carried out
      */
     public static void writePrediction(Ring ring) {
-        File file = new File(agentNamePerm, "prediction.txt");
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-            file.createNewFile();
-            if (ring != null) {
-                bw.write(ring.toString());
-            }
+        if (ring == null) {
+            return;
+        }
+        Path path = Paths.get(agentNamePerm, PREDICTION_FILE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            RingSnapshot.write(ring, channel);
         } catch (IOException e) {
             System.out.println("The prediction file could not be created (see StackTrace).");
             e.printStackTrace();
         }
+        if (Boolean.getBoolean("ringwars.predictionText")) {
+            File file = new File(agentNamePerm, "prediction.txt");
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+                bw.write(ring.toString());
+            } catch (IOException e) {
+                System.out.println("The prediction text export could not be created (see StackTrace).");
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Reads the prediction that was written at the end of the previous round.
+     * <p>
+     * If there is no binary prediction yet (e.g. because the game was started by an older version of the agent) or it is damaged, the
+     * text prediction in the format of a step file is read instead.
+     * 
+     * @return the ring as the agent left it in the previous round, or {@code null} if there is no prediction
+     * @throws InvalidStatusException if the prediction file is invalid
+     */
+    public static Ring readPrediction() throws InvalidStatusException {
+        Path path = Paths.get(agentNamePerm, PREDICTION_FILE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return RingSnapshot.read(channel);
+        } catch (NoSuchFileException e) {
+            return readStatusFile("prediction");
+        } catch (InvalidStatusException e) {
+            // A damaged snapshot isn't used. The text prediction is read instead, if there is one.
+            System.out.println(e.getMessage());
+            if (!new File(agentNamePerm, "prediction.txt").exists()) {
+                return null;
+            }
+            return readStatusFile("prediction");
+        } catch (IOException e) {
+            System.out.println("The prediction file could not be read.");
+            return null;
+        }
     }
 
     /**
      * Writes the notes created in the current round by the agent into the notes
      * file in the agent's directory.
+     * <p>
+     * The notes are stored in the binary record {@code notes.bin} ({@link NotesFile}), which is updated in place. If the system
+     * property {@code ringwars.notesText} is set to {@code true}, they are additionally exported as text to {@code notes.txt} for
+     * debugging. Otherwise a {@code notes.txt} of an older version of the agent is removed once the notes have been migrated, so a
+     * damaged record never falls back to outdated notes.
      * 
      * @param notes     notes
      * @param agentName agent name (name of the directory)
      */
-    public static void writeNotes(String notes, String agentName) {
-        File file = new File(agentName, "notes.txt");
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
-            file.createNewFile();
-            if (notes != null) {
-                bw.write(notes);
-            }
+    public static void writeNotes(Notes notes, String agentName) {
+        try {
+            NotesFile.write(notes, Paths.get(agentName, NotesFile.FILE_NAME));
         } catch (IOException e) {
             System.out.println("The notes file could not be created (see StackTrace).");
             e.printStackTrace();
+            return;
+        }
+        File file = new File(agentName, NOTES_TEXT_FILE);
+        if (Boolean.getBoolean("ringwars.notesText")) {
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+                bw.write(notes.toString());
+            } catch (IOException e) {
+                System.out.println("The notes text export could not be created (see StackTrace).");
+                e.printStackTrace();
+            }
+        } else if (file.exists() && !file.delete()) {
+            System.out.println("The old notes file could not be removed.");
         }
     }
 
@@ -200,15 +264,12 @@ public class Util {
         int visibilityCalculated = 0;
         if (ring != null) {
             try {
-                Node lastNode = null;
-                for (Node node : ring.getNodes()) {
-                    if (node.getOwner() == Owner.MINE) {
-                        lastNode = node;
-                    }
-                    if (node.getOwner() == Owner.UNKNOWN && lastNode !=null) {
-                        visibilityCalculated = node.getNodeNumber() - lastNode.getNodeNumber() -1 ;
-                        break;
-                    }
+                // The nodes are found on the bitsets of the owner index, 64 nodes at a time.
+                int firstMine = ring.getNextNode(Owner.MINE, 0);
+                int unknown = firstMine == -1 ? -1 : ring.getNextNode(Owner.UNKNOWN, firstMine);
+                if (unknown != -1) {
+                    int lastNode = ring.getPreviousNode(Owner.MINE, unknown);
+                    visibilityCalculated = unknown - lastNode -1 ;
                 }
             } catch (Exception e) {
                 System.out.println("Something went wrong when trying to calculate the visibility.");
@@ -218,15 +279,24 @@ public class Util {
         if (round == 1) {
             return new Notes(round, visibilityCalculated);
         }
-        String path = agentName + File.separator + "notes.txt";
-        String[] input = new String[20];
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            int i = 0;
-            String line;
-            while ((line = br.readLine()) != null) {
-                input[i++] = line;
+        Path record = Paths.get(agentName, NotesFile.FILE_NAME);
+        if (Files.exists(record)) {
+            try {
+                return NotesFile.read(record, round);
+            } catch (IOException | InvalidStatusException e) {
+                System.out.println(e.getMessage());
+                System.out.println("The notes file could not be read. The text notes are read instead.");
             }
-        } catch (FileNotFoundException e) {
+        }
+        /*
+         * If there is no notes record, the notes are read from the text file written by older versions of the agent (or by the text
+         * export). They are migrated to the record at the end of the turn.
+         */
+        String[] input;
+        try {
+            // The array has at least the 11 lines of the notes, so missing lines are null and fail the parsing below.
+            input = Files.readAllLines(Paths.get(agentName, NOTES_TEXT_FILE)).toArray(new String[11]);
+        } catch (NoSuchFileException e) {
             System.out.println("There is no notes file. It will be created this round.");
             return new Notes(round, visibilityCalculated);
         } catch (IOException e) {
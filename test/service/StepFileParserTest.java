@@ -0,0 +1,76 @@
+package service;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import model.*;
+
+/**
+ * Checks the {@link StepFileParser} with small step files that use the different line breaks. The project has no test framework, so the
+ * checks are run by the main method and throw an {@link AssertionError} if one fails:
+ * <p>
+ * {@code java -cp <classes> service.StepFileParserTest}
+ */
+public class StepFileParserTest {
+    private static final String[] LINES = { "1,0,2,-1,", "Y,N,T,U,", "10", "50" };
+
+    /**
+     * Runs all checks.
+     *
+     * @param args not used
+     * @throws Exception if a step file can't be written or read
+     */
+    public static void main(String[] args) throws Exception {
+        lineBreaks("\n");
+        lineBreaks("\r\n");
+        lineBreaks("\r");
+        moreLines("\n");
+        moreLines("\r\n");
+        System.out.println("All checks passed.");
+    }
+
+    // A file with 4 lines is read completely and isn't reported as having more lines, with or without a line break at the end.
+    private static void lineBreaks(String lineBreak) throws Exception {
+        String lines = String.join(lineBreak, LINES);
+        check(parse(lines), false, lineBreak);
+        check(parse(lines + lineBreak), false, lineBreak);
+    }
+
+    // A 5th line is reported.
+    private static void moreLines(String lineBreak) throws Exception {
+        check(parse(String.join(lineBreak, LINES) + lineBreak + "x" + lineBreak), true, lineBreak);
+    }
+
+    private static void check(StepFileParser parser, boolean moreLines, String lineBreak) {
+        String name = lineBreak.replace("\r", "CR").replace("\n", "LF");
+        assertTrue(Arrays.equals(parser.getFernies(), new int[] { 1, 0, 2, -1 }), name + ": fernies");
+        byte[] owners = { (byte) Owner.MINE.ordinal(), (byte) Owner.UNCONTROLLED.ordinal(), (byte) Owner.THEIRS.ordinal(),
+                (byte) Owner.UNKNOWN.ordinal() };
+        assertTrue(Arrays.equals(parser.getOwners(), owners), name + ": owners");
+        assertTrue(parser.getAvailableFernies() == 10, name + ": available fernies");
+        assertTrue(parser.getMaxFerniesPerNode() == 50, name + ": max fernies per node");
+        assertTrue(parser.hasMoreLines() == moreLines, name + ": more lines " + parser.hasMoreLines());
+    }
+
+    private static StepFileParser parse(String content) throws IOException, InvalidStatusException {
+        Path file = Files.createTempFile("step", ".txt");
+        try {
+            Files.write(file, content.getBytes(StandardCharsets.US_ASCII));
+            try (FileChannel channel = FileChannel.open(file)) {
+                return StepFileParser.parse(channel);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertTrue(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}